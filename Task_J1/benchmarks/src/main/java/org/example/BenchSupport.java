@@ -0,0 +1,46 @@
+package org.example;
+
+import java.net.ServerSocket;
+import java.security.*;
+import java.security.spec.ECGenParameterSpec;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+// Shared setup for the benchmarks 基准测试的公共准备代码
+final class BenchSupport {
+    // issuer of every benchmark server: a throw-away EC P-256 key 所有基准服务器的签发者：临时 EC P-256 密钥
+    static final String ISSUER_SIGNATURE = "SHA256withECDSA";
+    private static PrivateKey issuerKey;
+
+    private BenchSupport() {}
+
+    static synchronized PrivateKey issuerKey() throws GeneralSecurityException {
+        if (issuerKey == null) {
+            Security.addProvider(new BouncyCastleProvider());
+            KeyPairGenerator g = KeyPairGenerator.getInstance("EC");
+            g.initialize(new ECGenParameterSpec("secp256r1"));
+            issuerKey = g.generateKeyPair().getPrivate();
+        }
+        return issuerKey;
+    }
+
+    // a server signing with issuerKey(); not started 使用 issuerKey() 签名的服务器（未启动）
+    static KeyServer server(int port, ServerOptions options) throws Exception {
+        return new KeyServer(port, issuerKey(), new X500Name("CN=Bench Issuer"), 2, options);
+    }
+
+    // no background pool refills competing for the CPU, warnings only 不让密钥池后台补充抢占 CPU，只输出警告
+    static ServerOptions options() {
+        ServerOptions o = new ServerOptions();
+        o.poolHigh = 0;
+        o.poolLow = 0;
+        o.logLevel = Log.WARN;
+        return o;
+    }
+
+    static int freePort() throws Exception {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+}
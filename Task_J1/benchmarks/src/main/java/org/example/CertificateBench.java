@@ -0,0 +1,114 @@
+package org.example;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemWriter;
+import org.openjdk.jmh.annotations.*;
+
+// generateKeyAndCert split into its steps: key pair, certificate build + sign, PEM/wire encoding;
+// plus the batch API and the old per-call signer setup for comparison
+// generateKeyAndCert 拆成几步：生成密钥对、构建并签名证书、PEM/传输编码；另有批量接口和原来每次新建签名器的做法作对比
+// RSA-8192 key generation takes seconds; add it with -p profile=rsa8192 when needed.
+// RSA-8192 生成需要数秒，需要时用 -p profile=rsa8192 加入
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CertificateBench {
+    static final int BATCH = 64;
+
+    @Param({ "rsa2048", "ec-p256", "ed25519" })
+    public String profile;
+
+    private KeyServer server;
+    private KeyProfile keyProfile;
+    private KeyPair keyPair;
+    private X509CertificateHolder holder;
+    private SigningContext signing;
+    private String[] batchNames;
+    private KeyPair[] batchPairs;
+
+    @Setup
+    public void setup() throws Exception {
+        server = BenchSupport.server(0, BenchSupport.options());
+        keyProfile = KeyProfile.byId(profile);
+        keyPair = keyProfile.generateKeyPair();
+        signing = server.signingContext();
+        holder = signing.sign("bench-client", keyPair.getPublic());
+        batchNames = new String[BATCH];
+        batchPairs = new KeyPair[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            batchNames[i] = "bench-client-" + i;
+            batchPairs[i] = keyPair;
+        }
+    }
+
+    @Benchmark
+    public Object keyPair() throws Exception {
+        return keyProfile.generateKeyPair();
+    }
+
+    @Benchmark
+    public Object buildCertificate() {
+        return signing.sign("bench-client", keyPair.getPublic());
+    }
+
+    @Benchmark
+    public Object encodeResult() throws Exception {
+        return signing.encode(keyPair.getPrivate(), holder);
+    }
+
+    // sign + encode, one certificate per call 逐个签名并编码
+    @Benchmark
+    public Object issue() throws Exception {
+        return signing.issue("bench-client", keyPair);
+    }
+
+    // sign + encode through the batch API; score is per certificate 批量接口，分数为每个证书
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object issueBatch() throws Exception {
+        return signing.issueAll(batchNames, batchPairs);
+    }
+
+    // what generateKeyAndCert did per certificate before SigningContext: new SecureRandom, new signer,
+    // X509Certificate round trip, StringWriter/PemWriter 引入 SigningContext 之前每个证书的做法
+    @Benchmark
+    public Object issueWithoutContext() throws Exception {
+        BigInteger serial = new BigInteger(160, new SecureRandom());
+        Date notBefore = Date.from(ZonedDateTime.now().toInstant());
+        Date notAfter = Date.from(ZonedDateTime.now().plus(10, ChronoUnit.YEARS).toInstant());
+        X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(new X500Name("CN=Bench Issuer"), serial,
+                notBefore, notAfter, new X500Name("CN=bench-client"),
+                SubjectPublicKeyInfo.getInstance(keyPair.getPublic().getEncoded()));
+        ContentSigner signer = new JcaContentSignerBuilder(BenchSupport.ISSUER_SIGNATURE).setProvider("BC")
+                .build(BenchSupport.issuerKey());
+        X509Certificate cert = new JcaX509CertificateConverter().setProvider("BC").getCertificate(certBuilder.build(signer));
+        StringWriter swKey = new StringWriter();
+        try (PemWriter pw = new PemWriter(swKey)) {
+            pw.writeObject(new PemObject("PRIVATE KEY", keyPair.getPrivate().getEncoded()));
+        }
+        StringWriter swCert = new StringWriter();
+        try (PemWriter pw = new PemWriter(swCert)) {
+            pw.writeObject(new PemObject("CERTIFICATE", cert.getEncoded()));
+        }
+        return new KeyServer.KeyResult(swKey.toString(), swCert.toString());
+    }
+}
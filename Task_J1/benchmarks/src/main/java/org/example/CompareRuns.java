@@ -0,0 +1,121 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Compares two JMH result files written with -rf csv 比较两个用 -rf csv 输出的 JMH 结果文件
+//
+// Rows are matched by benchmark name (including secondary metrics such as :gc.alloc.rate.norm),
+// thread count and parameters. A change is marked '*' when the two scores are further apart than
+// the sum of their error margins, i.e. the confidence intervals do not overlap.
+// 按基准名称（包括 :gc.alloc.rate.norm 之类的次级指标）、线程数和参数匹配行；
+// 两个分数之差超过误差之和（置信区间不重叠）时标记为 '*'
+// Usage: java -cp target/benchmarks.jar org.example.CompareRuns <before.csv> <after.csv>
+// 用法：java -cp target/benchmarks.jar org.example.CompareRuns <之前.csv> <之后.csv>
+public class CompareRuns {
+    record Row(double score, double error, String unit) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareRuns <before.csv> <after.csv>");
+            System.exit(1);
+        }
+        Map<String, Row> before = read(Path.of(args[0]));
+        Map<String, Row> after = read(Path.of(args[1]));
+        int width = 20;
+        for (String k : before.keySet()) width = Math.max(width, k.length());
+
+        System.out.printf("%-" + width + "s %14s %14s %9s  %s%n", "benchmark", "before", "after", "change", "unit");
+        for (Map.Entry<String, Row> e : before.entrySet()) {
+            Row b = e.getValue();
+            Row a = after.get(e.getKey());
+            if (a == null) {
+                System.out.printf("%-" + width + "s %14.3f %14s %9s  %s%n", e.getKey(), b.score, "-", "", b.unit);
+                continue;
+            }
+            double change = b.score == 0 ? 0 : (a.score - b.score) / b.score * 100;
+            boolean significant = Math.abs(a.score - b.score) > errorOf(a) + errorOf(b);
+            System.out.printf(Locale.ROOT, "%-" + width + "s %14.3f %14.3f %+8.1f%%%s %s%n", e.getKey(), b.score, a.score,
+                    change, significant ? "*" : " ", a.unit);
+        }
+        for (String k : after.keySet())
+            if (!before.containsKey(k))
+                System.out.printf("%-" + width + "s %14s %14.3f %9s  %s%n", k, "-", after.get(k).score, "", after.get(k).unit);
+        System.out.println("* = difference larger than the combined error (99.9% confidence intervals do not overlap)");
+    }
+
+    // single-shot rows report NaN as the error 单次运行的行误差为 NaN
+    private static double errorOf(Row r) {
+        return Double.isNaN(r.error) ? 0 : r.error;
+    }
+
+    // key -> row, in file order 键到行的映射，保持文件顺序
+    static Map<String, Row> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        Map<String, Row> rows = new LinkedHashMap<>();
+        if (lines.isEmpty()) return rows;
+        List<String> header = split(lines.get(0));
+        int name = header.indexOf("Benchmark");
+        int threads = header.indexOf("Threads");
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+        int error = -1;
+        for (int i = 0; i < header.size(); i++)
+            if (header.get(i).startsWith("Score Error")) error = i;
+        if (name < 0 || score < 0)
+            throw new IOException(file + " is not a JMH csv result file");
+
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) continue;
+            List<String> f = split(line);
+            StringBuilder key = new StringBuilder(shortName(f.get(name)));
+            if (threads >= 0 && !"1".equals(f.get(threads))) key.append(" t=").append(f.get(threads));
+            for (int i = 0; i < header.size(); i++)
+                if (header.get(i).startsWith("Param: ") && i < f.size() && !f.get(i).isEmpty())
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(f.get(i));
+            rows.put(key.toString(), new Row(parse(f.get(score)), error >= 0 ? parse(f.get(error)) : Double.NaN,
+                    unit >= 0 ? f.get(unit) : ""));
+        }
+        return rows;
+    }
+
+    // org.example.CertificateBench.keyPair -> CertificateBench.keyPair
+    private static String shortName(String benchmark) {
+        return benchmark.startsWith("org.example.") ? benchmark.substring("org.example.".length()) : benchmark;
+    }
+
+    private static double parse(String s) {
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // one CSV line; JMH quotes every text field 解析一行 CSV，JMH 会给文本字段加引号
+    private static List<String> split(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+}
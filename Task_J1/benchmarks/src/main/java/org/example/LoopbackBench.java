@@ -0,0 +1,137 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// End-to-end throughput of cached requests against a real server over loopback
+// 通过回环地址对真实服务器发送已缓存名称请求的端到端吞吐量
+// Run with -t <threads> to add concurrent clients. 用 -t <线程数> 增加并发客户端
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+public class LoopbackBench {
+    static final String NAME = "cached-client";
+    // requests written before reading their replies in v2Pipelined 流水线一次写出的请求数
+    static final int PIPELINE = 16;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({ "1", "2" })
+        public int reactors;
+
+        int port;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            ServerOptions o = BenchSupport.options();
+            o.defaultProfile = KeyProfile.EC_P256;
+            o.reactors = reactors;
+            port = BenchSupport.freePort();
+            KeyServer server = BenchSupport.server(port, o);
+            Thread t = new Thread(() -> {
+                try {
+                    server.startMainLoop();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, "bench-server");
+            t.setDaemon(true);
+            t.start();
+            // wait for the listener, then make NAME a cache hit 等待监听就绪，然后让 NAME 进入缓存
+            for (int i = 0; ; i++) {
+                try {
+                    legacyRequest(port);
+                    break;
+                } catch (IOException e) {
+                    if (i > 100) throw e;
+                    Thread.sleep(100);
+                }
+            }
+        }
+    }
+
+    // one persistent v2 connection per benchmark thread 每个基准线程一个持久 v2 连接
+    @State(Scope.Thread)
+    public static class V2Connection {
+        SocketChannel ch;
+        ByteBuffer header = ByteBuffer.allocate(ProtocolV2.FRAME_HEADER);
+        ByteBuffer body = ByteBuffer.allocate(64 * 1024);
+        int reqId;
+
+        @Setup(Level.Trial)
+        public void open(Server s) throws IOException {
+            ch = SocketChannel.open(new InetSocketAddress("127.0.0.1", s.port));
+            ch.write(ProtocolV2.hello());
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            ch.close();
+        }
+    }
+
+    // connect, send name\0, read until the server closes (one legacy request) 旧协议的一次完整请求
+    @Benchmark
+    public long legacyConnectPerRequest(Server s) throws IOException {
+        return legacyRequest(s.port);
+    }
+
+    // REQUEST / RESULT round trip on a persistent connection 持久连接上的一次请求-响应往返
+    @Benchmark
+    public int v2RoundTrip(V2Connection c) throws IOException {
+        ByteBuffer req = ProtocolV2.request(c.reqId++, NAME);
+        while (req.hasRemaining()) c.ch.write(req);
+        return readReply(c);
+    }
+
+    // PIPELINE requests written back to back, then their replies read; scores are per request
+    // 连续写出 PIPELINE 个请求再读取全部回复；结果按单个请求计
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public int v2Pipelined(V2Connection c) throws IOException {
+        ByteBuffer[] reqs = new ByteBuffer[PIPELINE];
+        for (int i = 0; i < PIPELINE; i++)
+            reqs[i] = ProtocolV2.request(c.reqId++, NAME);
+        while (reqs[PIPELINE - 1].hasRemaining()) c.ch.write(reqs);
+        int total = 0;
+        for (int i = 0; i < PIPELINE; i++)
+            total += readReply(c);
+        return total;
+    }
+
+    private static int readReply(V2Connection c) throws IOException {
+        c.header.clear();
+        readFully(c.ch, c.header);
+        int len = c.header.getInt(1);
+        c.body.clear().limit(len);
+        readFully(c.ch, c.body);
+        return len;
+    }
+
+    static long legacyRequest(int port) throws IOException {
+        try (SocketChannel ch = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            ch.write(ByteBuffer.wrap((NAME + "\0").getBytes(StandardCharsets.US_ASCII)));
+            ByteBuffer buf = ByteBuffer.allocate(16 * 1024);
+            long total = 0;
+            int n;
+            while ((n = ch.read(buf)) >= 0) {
+                total += n;
+                buf.clear();
+            }
+            if (total == 0) throw new IOException("empty reply");
+            return total;
+        }
+    }
+
+    private static void readFully(SocketChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining())
+            if (ch.read(b) < 0) throw new IOException("connection closed");
+    }
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// The legacy name parser: bulk 0 scan + NameInterner against the old byte-by-byte loop
+// 旧协议名称解析：批量查找 0 + NameInterner，对比原来逐字节的循环
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NameParseBench {
+    @Param({ "12", "64" })
+    public int nameLength;
+
+    // names cycled through; more than the interner holds means mostly misses 轮换的名称数，超过 interner 容量时大多未命中
+    @Param({ "1000", "100000" })
+    public int distinct;
+
+    private ByteBuffer[] requests;
+    private NameInterner names;
+    private int next;
+
+    @Setup
+    public void setup() {
+        requests = new ByteBuffer[distinct];
+        for (int i = 0; i < distinct; i++) {
+            StringBuilder sb = new StringBuilder("n" + i + "-");
+            while (sb.length() < nameLength) sb.append('x');
+            byte[] b = (sb + "\0").getBytes(StandardCharsets.US_ASCII);
+            requests[i] = ByteBuffer.allocateDirect(b.length).put(b).flip();
+        }
+        names = new NameInterner(4096);
+    }
+
+    private ByteBuffer nextRequest() {
+        ByteBuffer b = requests[next];
+        next = next + 1 == requests.length ? 0 : next + 1;
+        return b;
+    }
+
+    @Benchmark
+    public Object scanAndIntern() {
+        ByteBuffer b = nextRequest();
+        int zero = NameInterner.indexOfZero(b, 0, b.limit());
+        return names.intern(b, 0, zero);
+    }
+
+    @Benchmark
+    public int scanOnly() {
+        ByteBuffer b = nextRequest();
+        return NameInterner.indexOfZero(b, 0, b.limit());
+    }
+
+    // what KeyServer.read did before the reusable buffers 改用复用缓冲区之前 KeyServer.read 的做法
+    @Benchmark
+    public Object byteLoop() {
+        ByteBuffer b = nextRequest().duplicate();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (b.hasRemaining()) {
+            byte c = b.get();
+            if (c == 0) break;
+            out.write(c);
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
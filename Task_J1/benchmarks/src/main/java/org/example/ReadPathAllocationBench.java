@@ -0,0 +1,81 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Allocation rate of the legacy name read path, before and after the reusable buffers
+// 旧协议读名称路径的内存分配量：改用复用缓冲区之前与之后对比
+//
+// "before" is the old KeyServer.read loop: a new 1024-byte buffer per read, a ByteArrayOutputStream
+// filled byte by byte, toByteArray() and a new String. "after" is what the reactors do now: one
+// direct buffer, a bulk scan for the 0 terminator and the NameInterner.
+// Usage: java -cp target/benchmarks.jar org.example.ReadPathAllocationBench [requests] [distinctNames]
+// 用法：java -cp target/benchmarks.jar org.example.ReadPathAllocationBench [请求数] [不同名称数]
+public class ReadPathAllocationBench {
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        byte[][] wire = new byte[distinct][];
+        for (int i = 0; i < distinct; i++)
+            wire[i] = ("client-" + i + ".example.org\0").getBytes(StandardCharsets.US_ASCII);
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().threadId();
+        // warm up both paths so JIT compilation is not counted 预热两条路径，避免统计 JIT 编译
+        long sink = before(wire, requests / 10) + after(wire, requests / 10);
+
+        for (int round = 0; round < 3; round++) {
+            long a0 = mx.getThreadAllocatedBytes(tid);
+            long t0 = System.nanoTime();
+            sink += before(wire, requests);
+            long t1 = System.nanoTime();
+            long a1 = mx.getThreadAllocatedBytes(tid);
+            sink += after(wire, requests);
+            long t2 = System.nanoTime();
+            long a2 = mx.getThreadAllocatedBytes(tid);
+            System.out.printf("round %d: before %6.1f B/req %6.1f ns/req | after %6.1f B/req %6.1f ns/req%n", round,
+                    (a1 - a0) / (double) requests, (t1 - t0) / (double) requests,
+                    (a2 - a1) / (double) requests, (t2 - t1) / (double) requests);
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    // the read loop KeyServer used to run 原来 KeyServer 的读取循环
+    private static long before(byte[][] wire, int requests) {
+        long sink = 0;
+        for (int i = 0; i < requests; i++) {
+            ByteBuffer buf = ByteBuffer.allocate(1024);
+            buf.put(wire[i % wire.length]); // stands in for sc.read(buf) 代替 sc.read(buf)
+            buf.flip();
+            ByteArrayOutputStream readBuffer = new ByteArrayOutputStream();
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                if (b == 0) {
+                    String name = new String(readBuffer.toByteArray(), StandardCharsets.US_ASCII);
+                    sink += name.hashCode();
+                    break;
+                }
+                readBuffer.write(b);
+            }
+        }
+        return sink;
+    }
+
+    // the read path of Reactor + KeyServer.readLegacyName 现在的读取路径
+    private static long after(byte[][] wire, int requests) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(Reactor.READ_BUFFER_SIZE);
+        NameInterner names = new NameInterner(4096);
+        long sink = 0;
+        for (int i = 0; i < requests; i++) {
+            buf.clear();
+            buf.put(wire[i % wire.length]);
+            buf.flip();
+            int zero = NameInterner.indexOfZero(buf, buf.position(), buf.limit());
+            String name = names.intern(buf, buf.position(), zero - buf.position());
+            sink += name.hashCode();
+        }
+        return sink;
+    }
+}
@@ -0,0 +1,152 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Consistent-hash ring deciding which cluster node owns a name (--cluster) 一致性哈希环，决定名称归哪个集群节点所有
+//
+// Loaded from a static file that every node shares:
+//     # comment
+//     vnodes 128              points per node on the ring (optional, default 128) 每个节点在环上的点数
+//     a 127.0.0.1:5555
+//     b 127.0.0.1:5556
+// Each node is hashed onto the ring at `vnodes` points (id#0, id#1, ...); a name belongs to the node
+// of the first point at or after its own hash. Adding or removing a node only moves the names next
+// to its points. Immutable once built.
+// 每个节点以 id#0、id#1…… 哈希到环上的多个点；名称属于其哈希值之后第一个点的节点。增删节点只影响相邻的名称。构建后不可变
+final class HashRing {
+    static final int DEFAULT_VNODES = 128;
+
+    static final class Node {
+        final int index;
+        final String id;
+        final String host;
+        final int port;
+
+        Node(int index, String id, String host, int port) {
+            this.index = index;
+            this.id = id;
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public String toString() {
+            return id + "@" + host + ":" + port;
+        }
+    }
+
+    private final Node[] nodes;
+    private final int self;
+    // ring points in ascending order and the node index of each 按升序排列的环上各点及其所属节点
+    private final long[] points;
+    private final int[] owners;
+
+    HashRing(List<Node> nodes, int self, int vnodes) {
+        this.nodes = nodes.toArray(new Node[0]);
+        this.self = self;
+        int n = this.nodes.length * vnodes;
+        long[] hashes = new long[n];
+        for (int i = 0, k = 0; i < this.nodes.length; i++)
+            for (int v = 0; v < vnodes; v++, k++)
+                hashes[k] = hash(this.nodes[i].id + "#" + v);
+        // sort hashes and carry the owner along through an index sort 按哈希排序，并通过下标带上所属节点
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k++) order[k] = k;
+        Arrays.sort(order, (x, y) -> Long.compare(hashes[x], hashes[y]));
+        this.points = new long[n];
+        this.owners = new int[n];
+        for (int k = 0; k < n; k++) {
+            points[k] = hashes[order[k]];
+            owners[k] = order[k] / vnodes;
+        }
+    }
+
+    // reads the config; self is the node with the given id, or (id == null) the one listening on port
+    // 读取配置；self 是指定 id 的节点，未指定 id 时为监听 port 的节点
+    static HashRing load(Path file, String selfId, int port) throws IOException {
+        List<Node> nodes = new ArrayList<>();
+        int vnodes = DEFAULT_VNODES;
+        int self = -1;
+        int lineNo = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNo++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] parts = line.split("\\s+");
+            if (parts.length == 2 && parts[0].equals("vnodes")) {
+                vnodes = Integer.parseInt(parts[1]);
+                continue;
+            }
+            int colon = parts.length == 2 ? parts[1].lastIndexOf(':') : -1;
+            if (colon <= 0)
+                throw new IOException(file + ":" + lineNo + ": expected '<id> <host>:<port>' or 'vnodes <n>'");
+            Node node = new Node(nodes.size(), parts[0], parts[1].substring(0, colon),
+                    Integer.parseInt(parts[1].substring(colon + 1)));
+            for (Node other : nodes)
+                if (other.id.equals(node.id))
+                    throw new IOException(file + ":" + lineNo + ": duplicate node id '" + node.id + "'");
+            if (selfId != null ? node.id.equals(selfId) : node.port == port) {
+                if (self >= 0)
+                    throw new IOException(file + ": several nodes listen on port " + port + ", pick one with --node");
+                self = node.index;
+            }
+            nodes.add(node);
+        }
+        if (self < 0)
+            throw new IOException(file + ": no node " + (selfId != null ? "'" + selfId + "'" : "with port " + port));
+        if (vnodes < 1)
+            throw new IOException(file + ": vnodes must be at least 1");
+        return new HashRing(nodes, self, vnodes);
+    }
+
+    // index of the node owning key 拥有该键的节点下标
+    int owner(String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
+
+    boolean ownedBySelf(String key) {
+        return owner(key) == self;
+    }
+
+    Node self() {
+        return nodes[self];
+    }
+
+    Node node(int index) {
+        return nodes[index];
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    // 64-bit FNV-1a over the chars, then the murmur3 finalizer so nearby keys spread over the ring
+    // 对字符做 64 位 FNV-1a，再用 murmur3 的收尾混合，使相近的键在环上分散
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53ec8e7L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "node " + self() + " of " + Arrays.toString(nodes) + ", " + points.length / nodes.length + " vnodes each";
+    }
+}
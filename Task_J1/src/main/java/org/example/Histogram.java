@@ -0,0 +1,85 @@
+package org.example;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear histogram of non-negative longs (HDR style) 对数-线性分桶的直方图（HDR 风格）
+//
+// Values below 2^SUB_BITS get a bucket each; above that every power of two is split into
+// 2^SUB_BITS linear sub-buckets, so any reported value is within ~1.6% of the recorded one.
+// record() is a couple of shifts and one atomic add, safe from any thread.
+// 小于 2^SUB_BITS 的值各占一个桶；更大的值每个 2 的幂区间再分成 2^SUB_BITS 个线性子桶，误差约 1.6%
+class Histogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // bucket of the largest long: SUB_COUNT + (62 - SUB_BITS) * SUB_COUNT + SUB_COUNT - 1
+    private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    static int bucketOf(long v) {
+        if (v < SUB_COUNT)
+            return (int) Math.max(0, v);
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        int sub = (int) (v >>> shift) & (SUB_COUNT - 1);
+        return SUB_COUNT + shift * SUB_COUNT + sub;
+    }
+
+    // largest value that falls into the bucket 桶内最大的值
+    static long highestIn(int bucket) {
+        if (bucket < SUB_COUNT)
+            return bucket;
+        int shift = (bucket - SUB_COUNT) / SUB_COUNT;
+        long sub = (bucket - SUB_COUNT) % SUB_COUNT;
+        return ((SUB_COUNT + sub + 1) << shift) - 1;
+    }
+
+    void record(long value) {
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    long count() { return total.sum(); }
+    long max() { return max.get(); }
+    long mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    // value at the given percentile (0..100); concurrent records may make it slightly stale
+    // 指定百分位（0..100）的值；并发记录时结果可能略有滞后
+    long percentile(double p) {
+        long n = count();
+        if (n == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(highestIn(i), max());
+        }
+        return max();
+    }
+
+    // "count=.. mean=.. p50=.. p90=.. p99=.. p999=.. max=.." scaled by divisor (e.g. 1_000_000 for ms)
+    String summary(long divisor, String unit) {
+        return "count=" + count() + " mean=" + scaled(mean(), divisor) + unit
+                + " p50=" + scaled(percentile(50), divisor) + unit
+                + " p90=" + scaled(percentile(90), divisor) + unit
+                + " p99=" + scaled(percentile(99), divisor) + unit
+                + " p999=" + scaled(percentile(99.9), divisor) + unit
+                + " max=" + scaled(max(), divisor) + unit;
+    }
+
+    static String scaled(long v, long divisor) {
+        return divisor == 1 ? Long.toString(v) : String.format(Locale.ROOT, "%.3f", v / (double) divisor);
+    }
+}
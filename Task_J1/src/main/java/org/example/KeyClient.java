@@ -8,8 +8,10 @@ import java.nio.charset.StandardCharsets;
 
 public class KeyClient {
     static void usageAndExit() {
-        System.err.println("Usage: java KeyClient [--delay seconds] [--exit-after-send] <name> <host> <port>");
+        System.err.println("Usage: java KeyClient [--delay seconds] [--exit-after-send] [--v2] [--profile <p>] <name>[,<name>...] <host> <port>");
         System.err.println("Example: java KeyClient alice 127.0.0.1 5555");
+        System.err.println("         java KeyClient --v2 alice,bob,carol 127.0.0.1 5555   (one connection, pipelined)");
+        System.err.println("         java KeyClient --profile ec-p256 alice 127.0.0.1 5555 (key profile, implies --v2)");
         System.exit(1);
     }
 
@@ -17,6 +19,8 @@ public class KeyClient {
         int idx = 0;
         int delaySeconds = 0;
         boolean exitAfterSend = false;
+        boolean v2 = false;
+        String profile = null;
         if (args.length < 3) usageAndExit();
         while (idx < args.length && args[idx].startsWith("--")) {
             if (args[idx].equals("--delay")) {
@@ -26,6 +30,14 @@ public class KeyClient {
             } else if (args[idx].equals("--exit-after-send")) {
                 exitAfterSend = true;
                 idx++;
+            } else if (args[idx].equals("--v2")) {
+                v2 = true;
+                idx++;
+            } else if (args[idx].equals("--profile")) {
+                idx++;
+                if (idx >= args.length) usageAndExit();
+                profile = args[idx++];
+                v2 = true; // only v2 can carry a profile 只有 v2 能携带算法
             } else usageAndExit();
         }
         if (idx + 3 > args.length) usageAndExit();
@@ -38,6 +50,11 @@ public class KeyClient {
         OutputStream os = sock.getOutputStream();
         InputStream is = sock.getInputStream();
 
+        if (v2) {
+            runV2(sock, name.split(","), profile, delaySeconds, exitAfterSend);
+            return;
+        }
+
         // send name + null byte
         os.write(name.getBytes(StandardCharsets.US_ASCII));
         os.write(0);
@@ -79,12 +96,69 @@ public class KeyClient {
         sock.close();
     }
 
+    // protocol v2: all names on one connection, answers arrive as they are generated
+    // 协议 v2：所有名称共用一个连接，结果按生成完成的顺序到达
+    static void runV2(Socket sock, String[] names, String profile, int delaySeconds, boolean exitAfterSend) throws Exception {
+        OutputStream os = sock.getOutputStream();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+        os.write(ProtocolV2.hello().array());
+        if (profile != null)
+            os.write(ProtocolV2.setProfile(profile).array());
+        ByteBuffer frame = names.length == 1 ? ProtocolV2.request(0, names[0]) : ProtocolV2.batch(0, names);
+        os.write(frame.array(), 0, frame.limit());
+        os.flush();
+        System.out.println("Sent " + names.length + " name(s) to server (protocol v2).");
+
+        if (exitAfterSend) {
+            System.out.println("--exit-after-send specified: closing socket without reading response.");
+            sock.close();
+            return;
+        }
+        // no more requests on this connection 本连接不再发送请求
+        sock.shutdownOutput();
+
+        if (delaySeconds > 0) {
+            System.out.println("Delaying " + delaySeconds + " seconds before reading (simulate slow client)...");
+            Thread.sleep(delaySeconds * 1000L);
+        }
+
+        for (int answered = 0; answered < names.length; answered++) {
+            byte type = in.readByte();
+            int len = in.readInt();
+            int reqId = in.readInt();
+            if (reqId < 0 || reqId >= names.length) throw new IOException("Unexpected request id " + reqId);
+            String name = names[reqId];
+            if (type == ProtocolV2.ERROR) {
+                byte[] msg = new byte[len - 4];
+                in.readFully(msg);
+                System.err.println("Server error for '" + name + "': " + new String(msg, StandardCharsets.US_ASCII));
+                continue;
+            }
+            if (type == ProtocolV2.BUSY) {
+                System.err.println("Server busy for '" + name + "', retry after " + in.readInt() + " ms");
+                continue;
+            }
+            if (type != ProtocolV2.RESULT) throw new IOException("Unexpected frame type " + type);
+            byte[] keyBytes = new byte[in.readInt()];
+            in.readFully(keyBytes);
+            byte[] certBytes = new byte[in.readInt()];
+            in.readFully(certBytes);
+            try (FileOutputStream fk = new FileOutputStream(name + ".key")) { fk.write(keyBytes); }
+            try (FileOutputStream fc = new FileOutputStream(name + ".crt")) { fc.write(certBytes); }
+            System.out.println("Saved " + name + ".key / " + name + ".crt (request " + reqId + ")");
+        }
+        sock.close();
+    }
 }
 
 
 /*KeyClient <name> <server-host> <server-port>
 KeyClient alice 127.0.0.1 5555
 
+协议 v2（一个连接发送多个名称，结果可乱序返回）
+KeyClient --v2 alice,bob,carol 127.0.0.1 5555
+KeyClient --profile ec-p256 alice 127.0.0.1 5555
+
 带 delay（等待若干秒再读响应，模拟慢客户端）
 KeyClient --delay 5 alice 127.0.0.1 5555
 
@@ -1,24 +1,384 @@
 package org.example;
 
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Load generator for KeyServer: one virtual thread per client connection 负载生成器：每个客户端连接一个虚拟线程
+//
+// Closed loop (default): --clients connections at a time, each starting the next request when the
+// previous one finished. Open loop (--rate): requests start on a fixed schedule whether or not
+// earlier ones finished, and latency counts from the scheduled start, so a stalled server shows
+// up as latency instead of silently lowering the offered load.
+// 闭环（默认）：同时 --clients 个连接，上一个请求完成才开始下一个。开环（--rate）：按固定节奏发起请求，
+// 不管之前的请求是否完成；延迟从计划开始时间算起，服务器卡顿会体现为延迟，而不是悄悄降低负载
+//
+// Holding ~100k connections needs ulimit -n above that on both sides, and more source addresses
+// than one (--source 127.0.0.1,127.0.0.2,...) because each has only ~28k ephemeral ports.
+// 保持约 10 万个连接需要两端的 ulimit -n 足够大，并用多个源地址（每个地址只有约 2.8 万个临时端口）
 public class KeyClientTest {
-    public static void main(String[] args) {
-        int numberOfClients = 50;
-        String host = "127.0.0.1";
-        String port = "5555";
-
-        for (int i = 0; i < numberOfClients; i++) {
-            final int clientId = i;
-            new Thread(() -> {
-                try {
-                    KeyClient.main(new String[]{
-                            "clientnew" + clientId,
-                            host,                 // 服务端地址
-                            port                  // 服务端端口
-                    });
-                } catch (Exception e) {
-                    e.printStackTrace();
+    static void usageAndExit() {
+        System.err.println("Usage: java KeyClientTest [options] [host] [port]   (default 127.0.0.1 5555)");
+        System.err.println("  --clients <n>        concurrent connections in closed loop (default 50)");
+        System.err.println("  --rate <n/s>         open loop: start n requests per second instead");
+        System.err.println("  --poisson            open loop with exponential gaps instead of a fixed period");
+        System.err.println("  --requests <n>       stop after n requests (closed loop default: one per client)");
+        System.err.println("  --duration <s>       stop starting requests after s seconds (open loop default 10)");
+        System.err.println("  --repeat <0..1>      fraction of requests for names from a fixed pool (default 0: all new)");
+        System.err.println("  --names <n>          size of that pool (default 100)");
+        System.err.println("  --prefix <s>         name prefix (default clientnew)");
+        System.err.println("  --slow <0..1>        fraction of clients that wait --delay before reading (default 0)");
+        System.err.println("  --delay <ms>         how long slow clients wait (default 5000)");
+        System.err.println("  --abort <0..1>       fraction of clients that close right after sending (default 0)");
+        System.err.println("  --v2                 protocol v2, one request per connection");
+        System.err.println("  --profile <p>        key profile (implies --v2)");
+        System.err.println("  --timeout <ms>       connect / read timeout per request (default 120000)");
+        System.err.println("  --source <ip,...>    local addresses to connect from, round robin");
+        System.err.println("  --label <s>          run label written to --csv / --json, e.g. a build id");
+        System.err.println("  --csv <file>         append a summary row (header written when the file is new)");
+        System.err.println("  --json <file>        write the summary as a JSON object");
+        System.exit(1);
+    }
+
+    // settings 参数
+    int clients = 50;
+    double rate = 0;
+    boolean poisson = false;
+    long requests = -1;
+    double durationSeconds = -1;
+    double repeatFraction = 0;
+    int poolNames = 100;
+    String prefix = "clientnew";
+    double slowFraction = 0;
+    long delayMs = 5000;
+    double abortFraction = 0;
+    boolean v2 = false;
+    String profile = null;
+    int timeoutMs = 120_000;
+    InetSocketAddress[] sources = new InetSocketAddress[0];
+    String label = "";
+    String csvFile = null;
+    String jsonFile = null;
+    InetSocketAddress server;
+
+    // results 结果
+    final Histogram latency = new Histogram();
+    final Histogram latencyNew = new Histogram();
+    final Histogram latencyRepeat = new Histogram();
+    final Histogram connectTime = new Histogram();
+    final LongAdder ok = new LongAdder();
+    final LongAdder busy = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    // closed by the server before any reply (legacy BUSY, shed connections) 服务器未回复就关闭
+    final LongAdder closed = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder aborted = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final AtomicLong started = new AtomicLong();
+    final AtomicLong inFlight = new AtomicLong();
+    final LongAccumulator maxInFlight = new LongAccumulator(Long::max, 0);
+    // unique per run so "new" names are new to the server as well 每次运行唯一，保证新名称对服务器也是新的
+    final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    public static void main(String[] args) throws Exception {
+        KeyClientTest t = new KeyClientTest();
+        t.parse(args);
+        t.run();
+    }
+
+    void parse(String[] args) {
+        int i = 0;
+        try {
+            while (i < args.length && args[i].startsWith("--")) {
+                String flag = args[i++];
+                switch (flag) {
+                    case "--poisson" -> { poisson = true; continue; }
+                    case "--v2" -> { v2 = true; continue; }
+                    default -> {}
+                }
+                if (i >= args.length) usageAndExit();
+                String val = args[i++];
+                switch (flag) {
+                    case "--clients" -> clients = Integer.parseInt(val);
+                    case "--rate" -> rate = Double.parseDouble(val);
+                    case "--requests" -> requests = Long.parseLong(val);
+                    case "--duration" -> durationSeconds = Double.parseDouble(val);
+                    case "--repeat" -> repeatFraction = Double.parseDouble(val);
+                    case "--names" -> poolNames = Integer.parseInt(val);
+                    case "--prefix" -> prefix = val;
+                    case "--slow" -> slowFraction = Double.parseDouble(val);
+                    case "--delay" -> delayMs = Long.parseLong(val);
+                    case "--abort" -> abortFraction = Double.parseDouble(val);
+                    case "--profile" -> { profile = val; v2 = true; }
+                    case "--timeout" -> timeoutMs = Integer.parseInt(val);
+                    case "--source" -> {
+                        String[] ips = val.split(",");
+                        sources = new InetSocketAddress[ips.length];
+                        for (int k = 0; k < ips.length; k++) sources[k] = new InetSocketAddress(ips[k].trim(), 0);
+                    }
+                    case "--label" -> label = val;
+                    case "--csv" -> csvFile = val;
+                    case "--json" -> jsonFile = val;
+                    default -> usageAndExit();
                 }
-            }).start();
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Bad number: " + e.getMessage());
+            usageAndExit();
+        }
+        String host = i < args.length ? args[i++] : "127.0.0.1";
+        int port = i < args.length ? Integer.parseInt(args[i++]) : 5555;
+        if (i < args.length || clients <= 0 || poolNames <= 0) usageAndExit();
+        server = new InetSocketAddress(host, port);
+        if (rate > 0 && requests < 0 && durationSeconds < 0) durationSeconds = 10;
+        if (rate <= 0 && requests < 0) requests = durationSeconds < 0 ? clients : Long.MAX_VALUE;
+        if (requests < 0) requests = Long.MAX_VALUE;
+    }
+
+    void run() throws Exception {
+        System.out.println("Load: " + (rate > 0 ? "open loop " + rate + " req/s" + (poisson ? " (poisson)" : "")
+                : "closed loop " + clients + " clients") + " -> " + server + (v2 ? " v2" : " legacy")
+                + (profile != null ? " " + profile : "") + ", repeat=" + repeatFraction + " slow=" + slowFraction
+                + " abort=" + abortFraction);
+        long deadline = durationSeconds < 0 ? Long.MAX_VALUE : System.nanoTime() + (long) (durationSeconds * 1e9);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        long t0 = System.nanoTime();
+        progress.scheduleAtFixedRate(() -> System.out.printf(Locale.ROOT,
+                "%6.1fs started=%d in_flight=%d ok=%d busy=%d failed=%d%n", (System.nanoTime() - t0) / 1e9,
+                started.get(), inFlight.get(), ok.sum(), busy.sum(), failed.sum() + timeouts.sum() + closed.sum()),
+                1, 1, TimeUnit.SECONDS);
+
+        // close() waits for every client thread to finish 关闭时等待所有客户端线程结束
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (rate > 0)
+                openLoop(threads, deadline);
+            else
+                closedLoop(threads, deadline);
         }
+        long elapsed = System.nanoTime() - t0;
+        progress.shutdownNow();
+        report(elapsed);
+    }
+
+    private void closedLoop(ExecutorService threads, long deadline) {
+        for (int c = 0; c < clients; c++) {
+            threads.execute(() -> {
+                long seq;
+                while (System.nanoTime() < deadline && (seq = started.getAndIncrement()) < requests)
+                    request(seq, System.nanoTime());
+            });
+        }
+    }
+
+    // the scheduler never waits for replies; every arrival gets its own virtual thread
+    // 调度线程从不等待回复，每个到达的请求都有自己的虚拟线程
+    private void openLoop(ExecutorService threads, long deadline) {
+        double meanGapNanos = 1e9 / rate;
+        long next = System.nanoTime();
+        for (long seq = 0; seq < requests && next < deadline; seq++) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            long scheduled = next;
+            long s = seq;
+            started.incrementAndGet();
+            threads.execute(() -> request(s, scheduled));
+            double gap = poisson ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos : meanGapNanos;
+            next += (long) gap;
+        }
+    }
+
+    // one connection, one request; latency is measured from startNanos 一个连接一个请求，延迟从 startNanos 算起
+    void request(long seq, long startNanos) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        boolean repeat = rnd.nextDouble() < repeatFraction;
+        String name = repeat ? prefix + "-hot" + rnd.nextInt(poolNames) : prefix + "-" + runId + "-" + seq;
+        boolean abort = rnd.nextDouble() < abortFraction;
+        boolean slow = !abort && rnd.nextDouble() < slowFraction;
+
+        maxInFlight.accumulate(inFlight.incrementAndGet());
+        try (Socket sock = new Socket()) {
+            if (sources.length > 0) sock.bind(sources[(int) (seq % sources.length)]);
+            sock.connect(server, timeoutMs);
+            connectTime.record(System.nanoTime() - startNanos);
+            sock.setSoTimeout(timeoutMs);
+            OutputStream os = sock.getOutputStream();
+            os.write(requestBytes(name));
+            os.flush();
+            if (abort) {
+                aborted.increment();
+                return;
+            }
+            if (slow) Thread.sleep(delayMs);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(sock.getInputStream(), 2048));
+            if (v2 ? readV2(in) : readLegacy(in)) {
+                long t = System.nanoTime() - startNanos;
+                latency.record(t);
+                (repeat ? latencyRepeat : latencyNew).record(t);
+                ok.increment();
+            }
+        } catch (SocketTimeoutException e) {
+            timeouts.increment();
+        } catch (IOException e) {
+            failed.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private byte[] requestBytes(String name) {
+        if (!v2)
+            return (name + "\0").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer req = ProtocolV2.request(0, name);
+        ByteBuffer b = ByteBuffer.allocate(2 + (profile != null ? ProtocolV2.FRAME_HEADER + profile.length() : 0) + req.limit());
+        b.put(ProtocolV2.hello());
+        if (profile != null) b.put(ProtocolV2.setProfile(profile));
+        return b.put(req).array();
+    }
+
+    // [int keyLen][key][int certLen][cert]; true when complete 读取完整返回 true
+    private boolean readLegacy(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            closed.increment();
+            return false;
+        }
+        int keyLen = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+        in.skipNBytes(keyLen);
+        int certLen = in.readInt();
+        in.skipNBytes(certLen);
+        bytesRead.add(8L + keyLen + certLen);
+        return true;
+    }
+
+    private boolean readV2(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            closed.increment();
+            return false;
+        }
+        int len = in.readInt();
+        in.skipNBytes(len);
+        bytesRead.add(ProtocolV2.FRAME_HEADER + len);
+        switch ((byte) type) {
+            case ProtocolV2.RESULT -> { return true; }
+            case ProtocolV2.BUSY -> busy.increment();
+            case ProtocolV2.ERROR -> errors.increment();
+            default -> throw new IOException("Unexpected frame type " + type);
+        }
+        return false;
+    }
+
+    // summary fields in output order 汇总字段（按输出顺序）
+    private Object[][] summary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        return new Object[][] {
+                { "label", label },
+                { "mode", rate > 0 ? (poisson ? "open-poisson" : "open") : "closed" },
+                { "protocol", v2 ? "v2" : "legacy" },
+                { "profile", profile == null ? "" : profile },
+                { "clients", rate > 0 ? 0 : clients },
+                { "rate", rate },
+                { "repeat", repeatFraction },
+                { "slow", slowFraction },
+                { "abort", abortFraction },
+                { "elapsed_s", round(seconds) },
+                { "started", started.get() > requests ? requests : started.get() },
+                { "ok", ok.sum() },
+                { "busy", busy.sum() },
+                { "errors", errors.sum() },
+                { "closed", closed.sum() },
+                { "timeouts", timeouts.sum() },
+                { "failed", failed.sum() },
+                { "aborted", aborted.sum() },
+                { "throughput_rps", round(ok.sum() / seconds) },
+                { "mb_read", round(bytesRead.sum() / 1e6) },
+                { "max_in_flight", maxInFlight.get() },
+                { "latency_mean_ms", ms(latency.mean()) },
+                { "latency_p50_ms", ms(latency.percentile(50)) },
+                { "latency_p90_ms", ms(latency.percentile(90)) },
+                { "latency_p99_ms", ms(latency.percentile(99)) },
+                { "latency_p999_ms", ms(latency.percentile(99.9)) },
+                { "latency_max_ms", ms(latency.max()) },
+                { "new_p50_ms", ms(latencyNew.percentile(50)) },
+                { "new_p99_ms", ms(latencyNew.percentile(99)) },
+                { "repeat_p50_ms", ms(latencyRepeat.percentile(50)) },
+                { "repeat_p99_ms", ms(latencyRepeat.percentile(99)) },
+                { "connect_p99_ms", ms(connectTime.percentile(99)) },
+        };
+    }
+
+    private static double ms(long nanos) {
+        return round(nanos / 1e6);
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 1000) / 1000.0;
+    }
+
+    void report(long elapsedNanos) throws IOException {
+        Object[][] fields = summary(elapsedNanos);
+        System.out.println("latency (ms)  " + latency.summary(1_000_000, ""));
+        System.out.println("  new names   " + latencyNew.summary(1_000_000, ""));
+        System.out.println("  repeated    " + latencyRepeat.summary(1_000_000, ""));
+        System.out.println("  connect     " + connectTime.summary(1_000_000, ""));
+        for (Object[] f : fields)
+            if (!f[0].toString().startsWith("latency_") && !f[0].toString().contains("_p"))
+                System.out.println(f[0] + " " + f[1]);
+
+        if (csvFile != null) {
+            Path p = Path.of(csvFile);
+            StringBuilder sb = new StringBuilder();
+            if (!Files.exists(p) || Files.size(p) == 0) {
+                for (Object[] f : fields) sb.append(sb.isEmpty() ? "" : ",").append(f[0]);
+                sb.append('\n');
+            }
+            for (int k = 0; k < fields.length; k++)
+                sb.append(k == 0 ? "" : ",").append(csv(fields[k][1]));
+            sb.append('\n');
+            Files.writeString(p, sb, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        if (jsonFile != null) {
+            StringBuilder sb = new StringBuilder("{\n");
+            for (int k = 0; k < fields.length; k++) {
+                Object v = fields[k][1];
+                sb.append("  \"").append(fields[k][0]).append("\": ")
+                        .append(v instanceof String s ? "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"" : v)
+                        .append(k + 1 < fields.length ? ",\n" : "\n");
+            }
+            Files.writeString(Path.of(jsonFile), sb.append("}\n"));
+        }
+    }
+
+    private static String csv(Object v) {
+        String s = String.valueOf(v);
+        return s.contains(",") || s.contains("\"") ? "\"" + s.replace("\"", "\"\"") + "\"" : s;
     }
 }
+
+/*
+闭环：50 个并发客户端，每个一个新名称（与原来的 KeyClientTest 相同）
+KeyClientTest
+开环：每秒 200 个请求，持续 30 秒，80% 为重复名称，5% 慢客户端，2% 发送后断开
+KeyClientTest --rate 200 --duration 30 --repeat 0.8 --slow 0.05 --delay 3000 --abort 0.02 --profile ec-p256 127.0.0.1 5555
+结果追加到 CSV 以便比较不同构建
+KeyClientTest --clients 1000 --requests 100000 --repeat 1 --label after --csv runs.csv
+*/
@@ -0,0 +1,106 @@
+package org.example;
+
+import java.security.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Pool of pre-generated key pairs, refilled in the background 后台补充的预生成密钥对池
+// Requests take a ready pair and only pay for certificate signing.
+// 请求直接取现成的密钥对，只需要签发证书
+class KeyPairPool {
+    private final KeyProfile profile;
+    private final int lowWatermark;   // refill starts when depth drops to this 深度降到此值时开始补充
+    private final int highWatermark;  // refill stops at this depth (target depth) 补充到此深度为止
+    private final BlockingQueue<KeyPair> ready;
+    private final ExecutorService refillPool;
+    // pairs currently being generated by refill threads 正在后台生成的数量
+    private final AtomicInteger inProgress = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    KeyPairPool(KeyProfile profile, int lowWatermark, int highWatermark, int refillThreads) {
+        if (lowWatermark < 0 || highWatermark < lowWatermark)
+            throw new IllegalArgumentException("Need 0 <= low <= high watermark, got " + lowWatermark + "/" + highWatermark);
+        this.profile = profile;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.ready = new ArrayBlockingQueue<>(Math.max(1, highWatermark));
+        // refill threads run below normal priority so request work goes first
+        // 补充线程优先级低于请求处理线程
+        AtomicInteger threadNo = new AtomicInteger();
+        this.refillPool = Executors.newFixedThreadPool(Math.max(1, refillThreads), r -> {
+            Thread t = new Thread(r, "keypool-" + profile.id + "-" + threadNo.getAndIncrement());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    // fill the pool up to the high watermark 启动时预填充到高水位
+    void start() {
+        scheduleRefill(true);
+    }
+
+    // take a ready pair, or generate one inline if the pool is empty 取一个密钥对，池空时同步生成
+    KeyPair take() throws GeneralSecurityException {
+        KeyPair kp = ready.poll();
+        if (kp != null) {
+            hits.incrementAndGet();
+            scheduleRefill(false);
+            return kp;
+        }
+        misses.incrementAndGet();
+        scheduleRefill(false);
+        return generate();
+    }
+
+    private void scheduleRefill(boolean force) {
+        if (!force && ready.size() + inProgress.get() > lowWatermark)
+            return;
+        while (true) {
+            int pending = inProgress.get();
+            if (ready.size() + pending >= highWatermark)
+                return;
+            if (!inProgress.compareAndSet(pending, pending + 1))
+                continue;
+            try {
+                refillPool.execute(this::refillOne);
+            } catch (RejectedExecutionException e) {
+                inProgress.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void refillOne() {
+        try {
+            ready.offer(generate());
+        } catch (Exception e) {
+            Log.warn("Key pair refill failed: {}", e);
+        } finally {
+            inProgress.decrementAndGet();
+        }
+    }
+
+    private KeyPair generate() throws GeneralSecurityException {
+        return profile.generateKeyPair();
+    }
+
+    void shutdown() {
+        refillPool.shutdownNow();
+    }
+
+    KeyProfile profile() { return profile; }
+
+    int depth() { return ready.size(); }
+    int refilling() { return inProgress.get(); }
+    long hits() { return hits.get(); }
+    long misses() { return misses.get(); }
+
+    @Override
+    public String toString() {
+        return "KeyPairPool[" + profile.id + " depth=" + depth() + "/" + highWatermark
+                + " refilling=" + refilling() + " hits=" + hits() + " misses=" + misses() + "]";
+    }
+}
@@ -0,0 +1,63 @@
+package org.example;
+
+import java.security.*;
+import java.security.spec.ECGenParameterSpec;
+
+// Key algorithm a client can ask for 客户端可选择的密钥算法
+// RSA_8192 is what the server always generated before and stays the default for legacy clients.
+// RSA_8192 是之前唯一的算法，仍是旧客户端的默认值
+enum KeyProfile {
+    RSA_8192("rsa8192", "RSA", 8192, null),
+    RSA_3072("rsa3072", "RSA", 3072, null),
+    RSA_2048("rsa2048", "RSA", 2048, null),
+    EC_P256("ec-p256", "EC", 0, "secp256r1"),
+    EC_P384("ec-p384", "EC", 0, "secp384r1"),
+    ED25519("ed25519", "Ed25519", 0, null);
+
+    final String id;
+    final String algorithm;
+    final int keySize;
+    final String curve;
+
+    KeyProfile(String id, String algorithm, int keySize, String curve) {
+        this.id = id;
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.curve = curve;
+    }
+
+    static KeyProfile byId(String id) {
+        for (KeyProfile p : values())
+            if (p.id.equals(id)) return p;
+        throw new IllegalArgumentException("Unknown key profile '" + id + "'");
+    }
+
+    // RSA is slow enough to be worth pre-generating 只有 RSA 慢到值得预生成
+    boolean slow() {
+        return algorithm.equals("RSA");
+    }
+
+    KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance(algorithm);
+        if (curve != null) kpg.initialize(new ECGenParameterSpec(curve), new SecureRandom());
+        else if (keySize > 0) kpg.initialize(keySize, new SecureRandom());
+        return kpg.generateKeyPair();
+    }
+
+    // nameTable / store key: the plain name for RSA_8192 (so existing stores stay valid), name\0id otherwise.
+    // Names never contain \0 (it terminates legacy requests).
+    // nameTable/存储的键：RSA_8192 用原名（兼容已有存储），其他为 name\0id；名称中不会有 \0
+    String tableKey(String name) {
+        return this == RSA_8192 ? name : name + '\0' + id;
+    }
+
+    // signature algorithm for certificates signed by the given issuer key 按签发者密钥选择签名算法
+    static String signatureAlgorithmFor(PrivateKey issuerKey) {
+        return switch (issuerKey.getAlgorithm()) {
+            case "RSA" -> "SHA256withRSA";
+            case "EC", "ECDSA" -> "SHA256withECDSA";
+            case "Ed25519" -> "Ed25519";
+            default -> throw new IllegalArgumentException("Unsupported issuer key algorithm " + issuerKey.getAlgorithm());
+        };
+    }
+}
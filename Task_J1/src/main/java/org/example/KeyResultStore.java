@@ -0,0 +1,224 @@
+package org.example;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Append-only on-disk store of issued KeyResults 已签发密钥结果的追加式磁盘存储
+//
+// keys.seg: records [int nameLen][name][int keyLen][key][int certLen][cert]
+//           (everything after the name is exactly the wire format sent to clients)
+// keys.idx: entries [int nameLen][name][long offset][int recordLen]
+//
+// The index is memory-mapped and replayed at startup; records that made it into the
+// segment but not into the index (crash between the two writes) are recovered by scanning.
+// Stored results are served with FileChannel.transferTo straight from the segment file.
+// Lookups (load, contains) take no lock: reactors call them for every new name and must not wait
+// behind an append that is fsyncing. An append publishes its offset only after the record is written.
+// 启动时映射索引文件并重建 name->offset 表；段文件中未进入索引的记录通过扫描恢复；
+// 读取时直接用 transferTo 从段文件发送。查找不加锁：反应器对每个新名称都会查找，不能等待正在刷盘的追加；
+// 追加在记录写完之后才发布偏移
+class KeyResultStore implements Closeable {
+    static final String SEGMENT_FILE = "keys.seg";
+    static final String INDEX_FILE = "keys.idx";
+    // upper bound for one record 单条记录的上限
+    static final int MAX_RECORD = 1 << 20;
+    // offsets map values pack (offset << LEN_BITS) | recordLen 偏移表的值打包了偏移和记录长度
+    private static final int LEN_BITS = 24;
+
+    private final FileChannel segment;
+    private final FileChannel index;
+    // fsync each record; off for the spill tier, whose contents are disposable 每条记录都刷盘；临时的落盘层不需要
+    private final boolean durable;
+    private final ConcurrentHashMap<String, Long> offsets = new ConcurrentHashMap<>();
+    private long segmentEnd;
+    private long indexEnd;
+
+    private KeyResultStore(FileChannel segment, FileChannel index, boolean durable) {
+        this.segment = segment;
+        this.index = index;
+        this.durable = durable;
+    }
+
+    static KeyResultStore open(Path dir) throws IOException {
+        return open(dir, true);
+    }
+
+    static KeyResultStore open(Path dir, boolean durable) throws IOException {
+        Files.createDirectories(dir);
+        FileChannel seg = FileChannel.open(dir.resolve(SEGMENT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel idx = FileChannel.open(dir.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        KeyResultStore store = new KeyResultStore(seg, idx, durable);
+        try {
+            store.recover();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void recover() throws IOException {
+        segmentEnd = segment.size();
+        long indexedEnd = loadIndex();
+        // scan segment records the index does not know about yet 扫描索引之后的段记录
+        long pos = indexedEnd;
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (pos < segmentEnd) {
+            int len = recordLength(pos, header);
+            if (len < 0 || pos + len > segmentEnd)
+                break;
+            String name = readName(pos);
+            appendIndexEntry(name, pos, len);
+            offsets.put(name, pack(pos, len));
+            pos += len;
+        }
+        if (pos < segmentEnd) {
+            System.err.println("KeyResultStore: dropping torn segment tail at " + pos);
+            segment.truncate(pos);
+            segmentEnd = pos;
+        }
+    }
+
+    // replays the mapped index, returns the segment offset it covers up to
+    // 重放映射的索引，返回索引覆盖到的段偏移
+    private long loadIndex() throws IOException {
+        long size = index.size();
+        long covered = 0;
+        long pos = 0;
+        if (size > 0) {
+            MappedByteBuffer map = index.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (map.remaining() >= 4) {
+                int start = map.position();
+                int nameLen = map.getInt();
+                if (nameLen < 0 || map.remaining() < nameLen + 12) {
+                    map.position(start);
+                    break;
+                }
+                byte[] nb = new byte[nameLen];
+                map.get(nb);
+                long off = map.getLong();
+                int len = map.getInt();
+                if (off < 0 || len <= 0 || off + len > segmentEnd) {
+                    map.position(start);
+                    break;
+                }
+                offsets.put(new String(nb, StandardCharsets.UTF_8), pack(off, len));
+                covered = Math.max(covered, off + len);
+            }
+            pos = map.position();
+        }
+        if (pos < size) {
+            System.err.println("KeyResultStore: dropping torn index tail at " + pos);
+            index.truncate(pos);
+        }
+        indexEnd = pos;
+        return covered;
+    }
+
+    // total record length at pos, or -1 if the header is unreadable 读取记录总长度
+    private int recordLength(long pos, ByteBuffer tmp) throws IOException {
+        long p = pos;
+        long total = 0;
+        for (int field = 0; field < 3; field++) {
+            tmp.clear();
+            if (p + 4 > segmentEnd || segment.read(tmp, p) < 4)
+                return -1;
+            int n = tmp.getInt(0);
+            if (n < 0 || n > MAX_RECORD)
+                return -1;
+            total += 4 + n;
+            p += 4 + n;
+        }
+        return total > MAX_RECORD ? -1 : (int) total;
+    }
+
+    private String readName(long pos) throws IOException {
+        ByteBuffer len = ByteBuffer.allocate(4);
+        segment.read(len, pos);
+        ByteBuffer nb = ByteBuffer.allocate(len.getInt(0));
+        segment.read(nb, pos + 4);
+        return new String(nb.array(), StandardCharsets.UTF_8);
+    }
+
+    private void appendIndexEntry(String name, long offset, int len) throws IOException {
+        byte[] nb = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer e = ByteBuffer.allocate(4 + nb.length + 12);
+        e.putInt(nb.length).put(nb).putLong(offset).putInt(len).flip();
+        while (e.hasRemaining())
+            indexEnd += index.write(e, indexEnd);
+    }
+
+    int size() {
+        return offsets.size();
+    }
+
+    boolean contains(String name) {
+        return offsets.containsKey(name);
+    }
+
+    private static long pack(long offset, int len) {
+        return (offset << LEN_BITS) | len;
+    }
+
+    // appends a result (segment first and fsync'd if durable, then the index entry)
+    // 追加结果：先写段文件（durable 时刷盘），再写索引
+    synchronized void append(String name, KeyServer.KeyResult res) throws IOException {
+        if (offsets.containsKey(name))
+            return;
+        byte[] nb = name.getBytes(StandardCharsets.UTF_8);
+        int len = 4 + nb.length + res.wireLength;
+        if (len > MAX_RECORD)
+            throw new IOException("Record too large for store: " + len + " bytes");
+        ByteBuffer[] rec = { ByteBuffer.allocate(4 + nb.length), wireOf(res) };
+        rec[0].putInt(nb.length).put(nb).flip();
+        long offset = segmentEnd;
+        long p = offset;
+        for (ByteBuffer b : rec)
+            while (b.hasRemaining())
+                p += segment.write(b, p);
+        if (durable)
+            segment.force(false);
+        segmentEnd = p;
+        appendIndexEntry(name, offset, len);
+        offsets.put(name, pack(offset, len));
+    }
+
+    // wire bytes of a result that may itself live in another store file 结果的传输格式字节
+    private static ByteBuffer wireOf(KeyServer.KeyResult res) throws IOException {
+        if (!res.fileBacked())
+            return res.wire();
+        ByteBuffer b = ByteBuffer.allocate(res.wireLength);
+        while (b.hasRemaining())
+            if (res.file.read(b, res.fileOffset + b.position()) < 0)
+                throw new EOFException("Stored record truncated");
+        b.flip();
+        return b;
+    }
+
+    // a file-backed result pointing into the segment, or null if unknown; reads nothing from disk
+    // 返回指向段文件的结果，不存在时返回 null；不读取磁盘
+    KeyServer.KeyResult load(String name) {
+        Long packed = offsets.get(name);
+        if (packed == null)
+            return null;
+        long offset = packed >>> LEN_BITS;
+        int len = (int) (packed & ((1 << LEN_BITS) - 1));
+        int header = 4 + name.getBytes(StandardCharsets.UTF_8).length;
+        return new KeyServer.KeyResult(segment, offset + header, len - header);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            index.close();
+        } finally {
+            segment.close();
+        }
+    }
+}
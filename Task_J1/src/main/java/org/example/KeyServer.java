@@ -1,49 +1,171 @@
 package org.example;
 
 import java.io.*;
-import java.math.BigInteger;
 import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.*;
-import java.security.cert.X509Certificate;
-import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.cert.*;
 import org.bouncycastle.cert.jcajce.*;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
 import org.bouncycastle.operator.*;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
-import org.bouncycastle.util.io.pem.PemObject;
-import org.bouncycastle.util.io.pem.PemWriter;
 
-public class KeyServer {
-    // Result container (PEM strings) 封装生成的密钥和证书（PEM字符串格式）
+public final class KeyServer {
+    // Result container, kept in wire format 封装生成的密钥和证书（以传输格式保存）
+    // protocol: 4 bytes len of key, key bytes (PKCS#8 PEM), 4 bytes len of cert, cert bytes (X.509 PEM)
+    // Either encoded once into a read-only direct buffer, or a region of the store's segment file
+    // that is sent with FileChannel.transferTo. 要么编码一次放入只读直接缓冲区，要么指向存储段文件中的一段区域
     static class KeyResult {
-        final String privateKeyPem; // PKCS#8 PEM
-        final String certPem;       // X.509 PEM
+        private final ByteBuffer wire;  // null when file-backed
+        final FileChannel file;         // null when in memory
+        final long fileOffset;
+        final int wireLength;
+
         KeyResult(String privateKeyPem, String certPem) {
-            this.privateKeyPem = privateKeyPem;
-            this.certPem = certPem;
+            this(wireOf(privateKeyPem.getBytes(StandardCharsets.US_ASCII), certPem.getBytes(StandardCharsets.US_ASCII)));
+        }
+
+        // copies an already encoded reply (the remaining bytes of encoded) 复制已编码好的回复
+        KeyResult(ByteBuffer encoded) {
+            ByteBuffer b = ByteBuffer.allocateDirect(encoded.remaining()).put(encoded).flip();
+            this.wire = b.asReadOnlyBuffer();
+            this.file = null;
+            this.fileOffset = 0;
+            this.wireLength = b.limit();
+        }
+
+        private static ByteBuffer wireOf(byte[] keyBytes, byte[] certBytes) {
+            ByteBuffer b = ByteBuffer.allocate(4 + keyBytes.length + 4 + certBytes.length);
+            b.putInt(keyBytes.length).put(keyBytes);
+            b.putInt(certBytes.length).put(certBytes);
+            return b.flip();
+        }
+
+        KeyResult(FileChannel file, long fileOffset, int wireLength) {
+            this.wire = null;
+            this.file = file;
+            this.fileOffset = fileOffset;
+            this.wireLength = wireLength;
+        }
+
+        // an independent view for one client (shares the bytes, own position)
+        // 给单个客户端的独立视图（共享内容，独立位置）
+        ByteBuffer wire() {
+            return wire.duplicate();
+        }
+
+        boolean fileBacked() {
+            return wire == null;
+        }
+
+        // bytes this result keeps in memory (direct buffer) 结果占用的内存字节数
+        int memoryBytes() {
+            return wire == null ? 0 : wireLength;
         }
     }
 
+    // one reply on the wire: buffers first (gathering write), then an optional file region
+    // 一个待发送的回复：先聚集写缓冲区，再用 transferTo 发送文件区域
+    static class Response {
+        final ByteBuffer[] buffers;
+        final FileChannel file;
+        long filePos;
+        long fileRemaining;
+        // for the latency metrics: request parsed, reply queued, bytes written so far
+        // 用于延迟统计：收到请求、回复入队的时间以及已写字节数
+        long requestNanos;
+        long queuedNanos;
+        long written;
+        Response(ByteBuffer[] buffers, FileChannel file, long filePos, long fileRemaining) {
+            this.buffers = buffers;
+            this.file = file;
+            this.filePos = filePos;
+            this.fileRemaining = fileRemaining;
+        }
+
+        // header (may be null) followed by the result's own view of the encoded bytes
+        // 头部（可为 null）后接结果编码字节的独立视图
+        static Response of(ByteBuffer header, KeyResult res) {
+            if (res.fileBacked()) {
+                ByteBuffer[] bufs = header == null ? new ByteBuffer[0] : new ByteBuffer[] { header };
+                return new Response(bufs, res.file, res.fileOffset, res.wireLength);
+            }
+            ByteBuffer[] bufs = header == null ? new ByteBuffer[] { res.wire() } : new ByteBuffer[] { header, res.wire() };
+            return new Response(bufs, null, 0, 0);
+        }
+
+        // true once everything is written 全部写完返回 true
+        boolean writeTo(SocketChannel sc) throws IOException {
+            // gathering write straight from the shared direct buffers 直接从共享的直接缓冲区聚集写
+            if (remaining(buffers) > 0) {
+                written += sc.write(buffers);
+                if (remaining(buffers) > 0)
+                    return false;
+            }
+            // file-backed result: kernel copies from the segment file to the socket 由内核从段文件直接拷贝到套接字
+            if (fileRemaining > 0) {
+                long n = file.transferTo(filePos, fileRemaining, sc);
+                filePos += n;
+                fileRemaining -= n;
+                written += n;
+            }
+            return fileRemaining == 0;
+        }
+
+        private static long remaining(ByteBuffer[] bufs) {
+            long r = 0;
+            for (ByteBuffer b : bufs) r += b.remaining();
+            return r;
+        }
+    }
+
+    static final int PROTOCOL_UNKNOWN = 0;
+    static final int PROTOCOL_LEGACY = 1; // name\0, one reply, then close 发送 name\0，回复一次后关闭
+    static final int PROTOCOL_V2 = 2;     // framed and pipelined, see ProtocolV2 分帧流水线协议
+
     // Per-client attachment for selector 每个客户端连接的上下文信息
     static class ClientAttachment {
         final SocketChannel channel;
-        final ByteArrayOutputStream readBuffer = new ByteArrayOutputStream();
+        // the reactor whose selector this channel is registered with 该连接所属的反应器
+        final Reactor reactor;
+        // decided by the first byte the client sends 由客户端发送的第一个字节决定
+        int protocol = PROTOCOL_UNKNOWN;
+        // legacy: start of a name that did not arrive in one read 旧协议：未在一次读取中收完的名称前半部分
+        ByteBuffer partialName = null;
         boolean nameReceived = false;
         String name = null;
-        // write buffer prepared when result is ready
-        ByteBuffer writeBuffer = null;
-        ClientAttachment(SocketChannel ch){ this.channel = ch; }
+        // v2: bytes of a partially received frame, requests not answered yet, client done sending
+        // v2：未收完的帧、尚未回复的请求数、客户端是否已停止发送
+        ByteBuffer frameBuffer = null;
+        boolean helloReceived = false;
+        String profileId = null; // set by SET_PROFILE, null = server default 由 SET_PROFILE 设置
+        boolean peer = false;    // another cluster node (FORWARDED) 另一个集群节点
+        int outstanding = 0;
+        boolean inputClosed = false;
+        // reply being written and (v2) the ones queued behind it 正在写的回复以及（v2）排队的回复
+        Response writing = null;
+        ArrayDeque<Response> queued = null;
+        boolean closed = false;
+        // waiters this connection still has in waitingClients, withdrawn when it closes
+        // 本连接仍在 waitingClients 中的等待项，关闭时撤回
+        HashSet<PendingDelivery> waits = null;
+        // deadline bookkeeping: timestamps updated on I/O, links of the reactor's timing wheel
+        // 截止时间：I/O 时更新的时间戳，以及反应器时间轮的链表指针
+        long openedNanos, lastReadNanos, lastWriteNanos;
+        ClientAttachment wheelPrev, wheelNext;
+        int wheelSlot = -1;
+        ClientAttachment(SocketChannel ch, Reactor r){ this.channel = ch; this.reactor = r; }
     }
 //1 为什么使用线程池threadpol
 // 2 为什么我们需要селектор
@@ -56,252 +178,1244 @@ public class KeyServer {
     //每个连接需要一个线程,线程上下文切换开销大
     // name -> future result
     private final ConcurrentHashMap<String, CompletableFuture<KeyResult>> nameTable = new ConcurrentHashMap<>();
-    // name -> list of waiting client attachments (channels)
-    private final ConcurrentHashMap<String, List<ClientAttachment>> waitingClients = new ConcurrentHashMap<>();
+    // name -> list of waiting clients (attachment + v2 request id)
+    private final ConcurrentHashMap<String, List<PendingDelivery>> waitingClients = new ConcurrentHashMap<>();
 
-    private final ExecutorService generatorPool;
-    private Selector selector;
+    private final ThreadPoolExecutor generatorPool;
+    // bounded: a flood of unique names must not queue hours of RSA work 有界队列：大量新名称不能堆积数小时的 RSA 任务
+    private final BlockingQueue<Runnable> generationQueue;
+    private final int queueCapacity;
+    // overload policy: false = stop reading new connections, true = answer BUSY 过载策略：暂停新连接或回复 BUSY
+    private final boolean rejectWhenBusy;
+    private final int retryAfterMs;
+    // set when the queue fills up, cleared once it has drained to half 队列满时置位，降到一半时清除
+    private final AtomicBoolean saturated = new AtomicBoolean();
+    private final LongAdder rejectedRequests = new LongAdder();
+    // generations not started yet or running, by table key 尚未开始或正在运行的生成任务
+    private final ConcurrentHashMap<String, GenerationTask> generations = new ConcurrentHashMap<>();
+    // orphaned generations (every waiter gone) either wait here at low priority or are dropped
+    // 孤儿任务（所有等待者都已断开）要么在这里以低优先级运行，要么被丢弃
+    private final ThreadPoolExecutor backgroundPool;
+    private final boolean orphansToBackground;
+    private final boolean keepOrphanResults;
+    private final LongAdder orphaned = new LongAdder();
+    private final LongAdder backgrounded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder promoted = new LongAdder();
+    // latency histograms and counters, readable over JMX and the stats port 延迟直方图与计数器
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final int statsPort;
+    private final int logLevel;
+    // per-connection deadlines, 0 = off 每个连接的超时，0 表示关闭
+    private final long readIdleNanos;
+    private final long writeStallNanos;
+    private final long lifetimeNanos;
+    // how often a connection with no deadline running is looked at again 没有进行中的截止时间时多久重新检查一次
+    private final long recheckNanos;
+    private final String logFile;
+    // --warm: pre-provisioning from a name list, null when not asked for 从名称列表预生成，未指定时为 null
+    private final String warmFile;
+    private final double warmRate;
+    private final int warmBatch;
+    private volatile Warmer warmer;
+    // --cluster: the ring splitting names between nodes and a forwarding link per other node (null index = self)
+    // 集群：在节点间划分名称的哈希环，以及到每个其他节点的转发连接（自身位置为 null）
+    private final String clusterFile;
+    private final String nodeId;
+    private HashRing ring;
+    private PeerLink[] peers;
+    // pre-generated key pairs per enabled profile, so a new name only waits for certificate signing
+    // 每种启用算法的预生成密钥对，新名称只需等待证书签发
+    private final EnumMap<KeyProfile, KeyPairPool> keyPairPools = new EnumMap<>(KeyProfile.class);
+    private final EnumMap<KeyProfile, ProfileStats> profileStats = new EnumMap<>(KeyProfile.class);
+    // profile for legacy clients and v2 clients that did not choose one 旧客户端及未选择算法时的默认算法
+    private final KeyProfile defaultProfile;
+    private final String signatureAlgorithm;
+    // per generator thread signer and encode buffers 每个生成线程自己的签名器和编码缓冲区
+    private final ThreadLocal<SigningContext> signing = new ThreadLocal<>();
+    // disk tier: the durable store (--store) or a temporary spill store for evicted results
+    // 磁盘层：持久化存储（--store），或仅用于存放被淘汰结果的临时目录
+    private final String storeDir;
+    private final String spillDir;
+    private final long cacheBytes;
+    private KeyResultStore store;
+    private boolean persistentStore;
+    // memory budget and LRU eviction for completed nameTable entries 已完成条目的内存预算与淘汰
+    private ResultCache cache;
+    // selector loops; the acceptor thread spreads new connections over them
+    // 多个选择器循环，接收线程把新连接分配给它们
+    private final Reactor[] reactors;
+    private final boolean balanceByLoad;
+    // --frontend vthread: connections served by virtual threads, the reactors stay idle 连接由虚拟线程处理，反应器不启动
+    private final boolean virtualThreads;
+    private VirtualThreadFrontend frontend;
+    private int nextReactor = 0;
 
-    public KeyServer(int port, PrivateKey issuerKey, X500Name issuerX500, int generatorThreads) {
+    public KeyServer(int port, PrivateKey issuerKey, X500Name issuerX500, int generatorThreads) throws IOException {
+        this(port, issuerKey, issuerX500, generatorThreads, new ServerOptions());
+    }
+
+    KeyServer(int port, PrivateKey issuerKey, X500Name issuerX500, int generatorThreads, ServerOptions options) throws IOException {
         this.port = port;
         this.issuerKey = issuerKey;
         this.issuerX500 = issuerX500;
         this.generatorThreads = generatorThreads;
-        this.generatorPool = Executors.newFixedThreadPool(generatorThreads);
+        this.queueCapacity = options.queueCapacity;
+        this.generationQueue = new ArrayBlockingQueue<>(queueCapacity);
+        // default AbortPolicy: a full queue throws RejectedExecutionException 队列满时抛出 RejectedExecutionException
+        this.generatorPool = new ThreadPoolExecutor(generatorThreads, generatorThreads,
+                0L, TimeUnit.MILLISECONDS, generationQueue);
+        this.rejectWhenBusy = options.rejectWhenBusy;
+        this.retryAfterMs = options.retryAfterMs;
+        this.orphansToBackground = options.orphansToBackground;
+        this.statsPort = options.statsPort;
+        this.logLevel = options.logLevel;
+        this.readIdleNanos = TimeUnit.MILLISECONDS.toNanos(options.readIdleMs);
+        this.writeStallNanos = TimeUnit.MILLISECONDS.toNanos(options.writeStallMs);
+        this.lifetimeNanos = TimeUnit.MILLISECONDS.toNanos(options.maxLifetimeMs);
+        long recheck = Long.MAX_VALUE;
+        for (long t : new long[] { readIdleNanos, writeStallNanos, lifetimeNanos })
+            if (t > 0) recheck = Math.min(recheck, t);
+        this.recheckNanos = recheck == Long.MAX_VALUE ? 0 : recheck;
+        this.logFile = options.logFile;
+        this.warmFile = options.warmFile;
+        this.clusterFile = options.clusterFile;
+        this.nodeId = options.nodeId;
+        this.warmRate = options.warmRate;
+        this.warmBatch = options.warmBatch;
+        this.keepOrphanResults = options.keepOrphanResults;
+        this.backgroundPool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "generator-background");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+        for (KeyProfile p : options.profiles) {
+            int[] pool = options.poolFor(p);
+            keyPairPools.put(p, new KeyPairPool(p, pool[1], pool[0], pool[2]));
+            profileStats.put(p, new ProfileStats());
+        }
+        this.defaultProfile = options.defaultProfile;
+        if (!keyPairPools.containsKey(defaultProfile))
+            throw new IllegalArgumentException("Default profile " + defaultProfile.id + " is not enabled");
+        this.signatureAlgorithm = KeyProfile.signatureAlgorithmFor(issuerKey);
+        this.storeDir = options.storeDir;
+        this.spillDir = options.spillDir;
+        this.cacheBytes = options.cacheBytes;
+        this.reactors = new Reactor[Math.max(1, options.reactors)];
+        for (int i = 0; i < reactors.length; i++)
+            reactors[i] = new Reactor(i, this);
+        this.balanceByLoad = options.balanceByLoad;
+        this.virtualThreads = options.virtualThreads;
+    }
+
+    KeyPairPool keyPairPool(KeyProfile profile) {
+        return keyPairPools.get(profile);
+    }
+
+    ProfileStats stats(KeyProfile profile) {
+        return profileStats.get(profile);
+    }
+
+    Set<KeyProfile> profiles() {
+        return keyPairPools.keySet();
+    }
+
+    ServerMetrics metrics() {
+        return metrics;
+    }
+
+    ResultCache cache() {
+        return cache;
+    }
+
+    int openConnections() {
+        int n = 0;
+        for (Reactor r : reactors) n += r.connections();
+        if (frontend != null) n += frontend.connections();
+        return n;
+    }
+
+    // per-profile request and generation counters 每种算法的请求与生成计数
+    static class ProfileStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder generated = new LongAdder();
+        final LongAdder generationNanos = new LongAdder();
+
+        @Override
+        public String toString() {
+            long n = generated.sum();
+            return "requests=" + requests.sum() + " generated=" + n
+                    + " avgGenMs=" + (n == 0 ? 0 : generationNanos.sum() / n / 1_000_000);
+        }
+    }
+
+    // generations waiting for a generator thread 等待生成线程的任务数
+    int generationQueueDepth() {
+        return generationQueue.size();
+    }
+
+    // requests answered BUSY or closed because the queue was full 因队列满被拒绝的请求数
+    long rejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    // connections parked without OP_READ across all reactors 所有反应器中被暂停读取的连接数
+    int pausedConnections() {
+        int n = 0;
+        for (Reactor r : reactors) n += r.paused();
+        if (frontend != null) n += frontend.paused();
+        return n;
+    }
+
+    Warmer warmer() {
+        return warmer;
+    }
+
+    // "nio" or "vthread" 当前使用的前端
+    String frontendName() {
+        return virtualThreads ? "vthread" : "nio";
+    }
+
+    // null unless --frontend vthread 仅在 --frontend vthread 时非空
+    VirtualThreadFrontend frontend() {
+        return frontend;
+    }
+
+    // null unless --cluster 仅在 --cluster 时非空
+    HashRing ring() {
+        return ring;
+    }
+
+    // forwarded generations not answered yet, over all peers 所有对等节点上尚未回复的转发数
+    int forwardsInFlight() {
+        int n = 0;
+        if (peers != null)
+            for (PeerLink p : peers)
+                if (p != null) n += p.inFlight();
+        return n;
+    }
+
+    KeyProfile defaultProfile() {
+        return defaultProfile;
+    }
+
+    String queueStats() {
+        return "queue=" + generationQueueDepth() + "/" + queueCapacity + " rejected=" + rejectedRequests()
+                + " paused=" + pausedConnections() + (saturated.get() ? " SATURATED" : "")
+                + " orphaned=" + orphaned.sum() + " background=" + backgroundPool.getQueue().size()
+                + "/" + backgrounded.sum() + " dropped=" + dropped.sum() + " promoted=" + promoted.sum();
+    }
+
+    // reactors park new connections while this is true (pause policy only) 为 true 时反应器暂停新连接（仅 pause 策略）
+    boolean pauseNewConnections() {
+        return !rejectWhenBusy && saturated.get();
+    }
+
+    private void markSaturated() {
+        if (saturated.compareAndSet(false, true))
+            Log.warn("Generation queue full, {} ({})", rejectWhenBusy ? "answering BUSY" : "pausing new connections", queueStats());
+    }
+
+    // called as each generation starts: once the queue is down to half, let parked connections in again
+    // 每个生成任务开始时调用：队列降到一半后恢复被暂停的连接
+    private void checkDrained() {
+        if (saturated.get() && generationQueue.size() <= queueCapacity / 2 && saturated.compareAndSet(true, false)) {
+            Log.info("Generation queue drained, accepting requests again ({})", queueStats());
+            for (Reactor r : reactors) r.wakeup();
+        }
     }
 
-    // 接受新连接
-    private void accept(SelectionKey key) throws IOException {
-        ServerSocketChannel ssc = (ServerSocketChannel) key.channel();
-        SocketChannel sc = ssc.accept();
-        sc.configureBlocking(false);
-        ClientAttachment attach = new ClientAttachment(sc);
-        sc.register(selector, SelectionKey.OP_READ, attach);
-        System.out.println("Accepted connection from " + sc.getRemoteAddress());
+    // 接受新连接: blocking accept on the acceptor thread, then hand over to a reactor
+    // 接收线程阻塞接受连接，然后交给某个反应器
+    private void acceptLoop(ServerSocketChannel ssc) throws IOException {
+        while (true) {
+            SocketChannel sc = ssc.accept();
+            metrics.accepts.increment();
+            pickReactor().assign(sc);
+        }
+    }
+
+    // round-robin, or the reactor with the fewest open connections 轮询，或选择连接数最少的反应器
+    private Reactor pickReactor() {
+        if (balanceByLoad) {
+            Reactor best = reactors[0];
+            for (Reactor r : reactors)
+                if (r.connections() < best.connections()) best = r;
+            return best;
+        }
+        Reactor r = reactors[nextReactor];
+        nextReactor = (nextReactor + 1) % reactors.length;
+        return r;
     }
     // 读取客户端发送的数据
-    private void read(SelectionKey key) throws IOException {
+    void read(SelectionKey key) throws IOException {
         ClientAttachment att = (ClientAttachment) key.attachment();
         SocketChannel sc = att.channel;
-        ByteBuffer buf = ByteBuffer.allocate(1024);
+        // one direct buffer per reactor, reused by every read on that thread 每个反应器一个直接缓冲区，本线程的所有读取复用
+        ByteBuffer buf = att.reactor.readBuffer();
+        buf.clear();
         int r = sc.read(buf);
+        att.lastReadNanos = System.nanoTime();
         if (r == -1) {
             // client closed
-            closeChannel(key);
+            if (att.protocol == PROTOCOL_V2) {
+                // v2 client may half-close after its last request; answer what is still pending
+                // v2 客户端可能在最后一个请求后半关闭；把剩余的请求回复完
+                att.inputClosed = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                closeIfIdle(key, att);
+            } else {
+                closeChannel(key);
+            }
             return;
         }
         buf.flip();
-        while (buf.hasRemaining()) {
-            byte b = buf.get();
-            if (!att.nameReceived) {
-                if (b == 0) {
-                    att.nameReceived = true;
-                    att.name = new String(att.readBuffer.toByteArray(), StandardCharsets.US_ASCII);
-                    System.out.println("Received name '" + att.name + "' from " + sc.getRemoteAddress());
-                    handleNameRequest(att.name, att, key);
-                } else {
-                    att.readBuffer.write(b);
-                    // limit name length to something reasonable
-                    if (att.readBuffer.size() > 4096) {
-                        System.err.println("Name too long, closing");
-                        closeChannel(key);
-                        return;
-                    }
+        if (att.protocol == PROTOCOL_UNKNOWN && buf.hasRemaining())
+            att.protocol = buf.get(0) == ProtocolV2.MAGIC ? PROTOCOL_V2 : PROTOCOL_LEGACY;
+        if (att.protocol == PROTOCOL_V2) {
+            readFrames(key, att, buf);
+            return;
+        }
+        // anything after the name is ignored 名称之后的数据忽略
+        if (!att.nameReceived)
+            readLegacyName(key, att, buf);
+    }
+
+    // legacy: looks for the 0 terminator in bulk; only a name split across reads is copied
+    // 旧协议：批量查找 0 结束符；只有跨多次读取的名称才需要复制
+    private void readLegacyName(SelectionKey key, ClientAttachment att, ByteBuffer buf) throws IOException {
+        int start = buf.position();
+        int zero = NameInterner.indexOfZero(buf, start, buf.limit());
+        int len = (zero < 0 ? buf.limit() : zero) - start;
+        int have = att.partialName == null ? 0 : att.partialName.position();
+        // limit name length to something reasonable
+        if (have + len > ProtocolV2.MAX_NAME) {
+            Log.warn("Name too long, closing");
+            closeChannel(key);
+            return;
+        }
+        String name;
+        if (zero >= 0 && att.partialName == null) {
+            name = att.reactor.names().intern(buf, start, len);
+        } else {
+            if (att.partialName == null || att.partialName.remaining() < len) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(ProtocolV2.MAX_NAME, Math.max(64, (have + len) * 2)));
+                if (att.partialName != null) bigger.put(att.partialName.flip());
+                att.partialName = bigger;
+            }
+            att.partialName.put(att.partialName.position(), buf, start, len);
+            att.partialName.position(have + len);
+            if (zero < 0)
+                return;
+            name = att.reactor.names().intern(att.partialName, 0, have + len);
+            att.partialName = null;
+        }
+        att.nameReceived = true;
+        att.name = name;
+        if (Log.debug()) Log.debug("Received name '{}' from {}", name, att.channel.getRemoteAddress());
+        handleNameRequest(name, defaultProfile, att, -1, key);
+    }
+
+    // v2: collect bytes until whole frames are available, then handle each frame
+    // v2：累积字节直到收到完整帧，然后逐帧处理
+    // Frames that arrived whole are parsed straight from the reactor's read buffer; only a partial
+    // frame is copied into the connection's own frameBuffer. 完整到达的帧直接在反应器的读缓冲区上解析，只有不完整的帧才复制
+    private void readFrames(SelectionKey key, ClientAttachment att, ByteBuffer in) throws IOException {
+        ByteBuffer fb;
+        if (att.frameBuffer == null || att.frameBuffer.position() == 0) {
+            fb = in;
+        } else {
+            if (!ensureFrameSpace(key, att, in.remaining()))
+                return;
+            fb = att.frameBuffer;
+            fb.put(in);
+            fb.flip();
+        }
+        try {
+            // a hello split across reads waits below, with its first byte saved, for the rest
+            // 跨读取拆开的握手：已收到的字节在下面保存，等待其余部分
+            if (!att.helloReceived && fb.remaining() >= 2) {
+                fb.get();
+                byte version = fb.get();
+                if (version != ProtocolV2.VERSION) {
+                    Log.warn("Unsupported protocol version {}, closing", version);
+                    closeChannel(key);
+                    return;
+                }
+                att.helloReceived = true;
+            }
+            while (att.helloReceived && fb.remaining() >= ProtocolV2.FRAME_HEADER) {
+                int start = fb.position();
+                byte type = fb.get();
+                int len = fb.getInt();
+                if (len < 0 || len > ProtocolV2.MAX_FRAME) {
+                    Log.warn("Bad frame length {}, closing", len);
+                    closeChannel(key);
+                    return;
+                }
+                if (fb.remaining() < len) {
+                    fb.position(start);
+                    break;
+                }
+                // the payload is fb itself, limited to the frame 载荷就是限制到本帧范围的 fb 本身
+                int end = fb.position() + len;
+                int limit = fb.limit();
+                fb.limit(end);
+                boolean ok = handleFrame(key, att, type, fb);
+                fb.limit(limit).position(end);
+                if (!ok) {
+                    closeChannel(key);
+                    return;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            Log.warn("Malformed frame, closing");
+            closeChannel(key);
+            return;
+        }
+        if (att.closed)
+            return;
+        if (fb != in) {
+            fb.compact();
+        } else if (in.hasRemaining() && ensureFrameSpace(key, att, in.remaining())) {
+            att.frameBuffer.put(in);
+        }
+    }
+
+    // room in frameBuffer for n more bytes; closes the connection if that exceeds the frame limit
+    // 保证 frameBuffer 还能放下 n 个字节；超出帧上限时关闭连接
+    private boolean ensureFrameSpace(SelectionKey key, ClientAttachment att, int n) {
+        if (att.frameBuffer == null)
+            att.frameBuffer = ByteBuffer.allocate(Math.max(4096, n));
+        if (att.frameBuffer.remaining() >= n)
+            return true;
+        int need = att.frameBuffer.position() + n;
+        if (need > ProtocolV2.MAX_FRAME + ProtocolV2.FRAME_HEADER + 2) {
+            Log.warn("Frame too large, closing");
+            closeChannel(key);
+            return false;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(need, att.frameBuffer.capacity() * 2));
+        att.frameBuffer.flip();
+        bigger.put(att.frameBuffer);
+        att.frameBuffer = bigger;
+        return true;
+    }
+
+    // false if the frame is malformed 帧格式错误时返回 false
+    private boolean handleFrame(SelectionKey key, ClientAttachment att, byte type, ByteBuffer payload) {
+        switch (type) {
+            case ProtocolV2.REQUEST -> {
+                int reqId = payload.getInt();
+                String name = readName(att, payload, payload.remaining());
+                if (name == null)
+                    return false;
+                requestFromFrame(key, att, reqId, name);
+            }
+            case ProtocolV2.BATCH -> {
+                int count = payload.getInt();
+                for (int i = 0; i < count; i++) {
+                    int reqId = payload.getInt();
+                    String name = readName(att, payload, payload.getShort() & 0xFFFF);
+                    if (name == null)
+                        return false;
+                    requestFromFrame(key, att, reqId, name);
                 }
             }
+            case ProtocolV2.SET_PROFILE -> {
+                byte[] pb = new byte[payload.remaining()];
+                payload.get(pb);
+                att.profileId = new String(pb, StandardCharsets.US_ASCII);
+            }
+            case ProtocolV2.FORWARDED -> {
+                att.peer = true;
+                if (Log.info()) Log.info("Node {} connected from {}",
+                        StandardCharsets.US_ASCII.decode(payload), att.channel.socket().getRemoteSocketAddress());
+            }
+            default -> {
+                Log.warn("Unknown frame type {}, closing", type);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // name of len bytes, or null if it is too long or contains \0 名称过长或包含 \0 时返回 null
+    private static String readName(ClientAttachment att, ByteBuffer payload, int len) {
+        int pos = payload.position();
+        if (len > ProtocolV2.MAX_NAME)
+            return null;
+        if (len > payload.remaining())
+            throw new BufferUnderflowException();
+        payload.position(pos + len);
+        if (NameInterner.indexOfZero(payload, pos, pos + len) >= 0)
+            return null;
+        return att.reactor.names().intern(payload, pos, len);
+    }
+
+    private void requestFromFrame(SelectionKey key, ClientAttachment att, int reqId, String name) {
+        att.outstanding++;
+        KeyProfile profile = defaultProfile;
+        if (att.profileId != null) {
+            profile = enabledProfile(att.profileId);
+            if (profile == null) {
+                reject(key, att, reqId, "unknown or disabled key profile '" + att.profileId + "'");
+                return;
+            }
         }
+        handleNameRequest(name, profile, att, reqId, key);
     }
+
+    KeyProfile enabledProfile(String id) {
+        for (KeyProfile p : keyPairPools.keySet())
+            if (p.id.equals(id)) return p;
+        return null;
+    }
+
+    // v2: answer a request with an ERROR frame right away v2：立即以 ERROR 帧回复请求
+    private void reject(SelectionKey key, ClientAttachment att, int reqId, String message) {
+        PendingDelivery pd = new PendingDelivery(att, reqId);
+        pd.error = message;
+        startResponse(key, pd);
+    }
+
+    // requestId is the v2 request id, -1 for legacy clients v2 请求号，旧协议为 -1
+    private void handleNameRequest(String name, KeyProfile profile, ClientAttachment att, int requestId, SelectionKey key) {
+        PendingDelivery waiter = new PendingDelivery(att, requestId);
+        waiter.forwarded = att.peer;
+        if (!request(name, profile, waiter)) {
+            busy(key, att, requestId);
+            return;
+        }
+        if (att.waits == null) att.waits = new HashSet<>();
+        att.waits.add(waiter);
+    }
+
     // 核心逻辑：避免重复生成相同名称的密钥
-    private void handleNameRequest(String name, ClientAttachment att, SelectionKey key) {
+    // Shared by both front ends: finds or starts the generation for name and registers waiter, which is
+    // handed off (PendingDelivery.handOff) once the result is there, possibly before this returns.
+    // false if the request must be answered BUSY instead; the waiter is then not registered.
+    // 两种前端共用：查找或启动名称的生成任务并登记等待者，结果就绪后交付（可能在返回前就交付）；
+    // 需要回复 BUSY 时返回 false，此时等待者未登记
+    boolean request(String name, KeyProfile profile, PendingDelivery waiter) {
+        stats(profile).requests.increment();
+        if (waiter.forwarded) metrics.peerRequests.increment();
+        // the same name with different profiles gets different keys 同名不同算法的密钥互不相同
+        String tableKey = profile.tableKey(name);
         // get or create future for this name
-        CompletableFuture<KeyResult> fut = nameTable.computeIfAbsent(name, n -> {
-            CompletableFuture<KeyResult> newF = new CompletableFuture<>();
-
-            // submit generation task
-            generatorPool.submit(() -> {
-                System.out.println(Thread.currentThread());
-                try {
-                    KeyResult res = generateKeyAndCert(n);
-                    newF.complete(res);
-                    // upon completion, deliver to waiting clients (the selector thread will do actual write)
-                    //完成后，交付给等待的客户端（选择器线程将执行实际写入）
-                    deliverResultToWaitingClients(n, res);
-                } catch (Throwable t) {
-                    newF.completeExceptionally(t);
-                    t.printStackTrace();
+        CompletableFuture<KeyResult> fut = nameTable.get(tableKey);
+        if (fut != null) {
+            cache.hit(tableKey);
+            if (!fut.isDone()) metrics.coalescedWaiters.increment();
+        } else {
+            // issued before (restart or evicted from memory) -> reload it from disk
+            // 之前签发过（重启或已被淘汰）的从磁盘重新加载
+            KeyResult stored = loadFromStore(tableKey);
+            CompletableFuture<KeyResult> created = stored != null
+                    ? CompletableFuture.completedFuture(stored) : new CompletableFuture<>();
+            // cluster: another node owns the name, unless it came from a node already 集群中归其他节点所有（除非已是转发来的请求）
+            int owner = ring == null || waiter.forwarded ? -1 : ring.owner(tableKey);
+            boolean remote = owner >= 0 && peers[owner] != null;
+            if (stored == null && !remote && rejectWhenBusy && saturated.get()) {
+                // busy policy: do not even queue new names until the backlog drains 繁忙策略：积压消化前不接受新名称
+                return false;
+            }
+            fut = nameTable.putIfAbsent(tableKey, created);
+            if (fut != null) {
+                cache.hit(tableKey);
+                if (!fut.isDone()) metrics.coalescedWaiters.increment();
+            } else {
+                fut = created;
+                if (stored != null) {
+                    cache.diskHit();
+                    cache.admit(tableKey, fut, stored);
+                } else if (remote) {
+                    metrics.forwarded.increment();
+                    peers[owner].forward(new PeerLink.Forward(name, profile, tableKey, created));
+                } else {
+                    cache.miss();
+                    if (!submitGeneration(name, profile, created))
+                        return false;
                 }
-            });
-            return newF;
-        });
+            }
+        }
 
         // add this client to waiting list
         //将此客户端添加到等待列表
-        waitingClients.compute(name, (k,v)->{
-            if (v==null) v = Collections.synchronizedList(new ArrayList<>());
-            v.add(att);
+        waiter.tableKey = tableKey;
+        boolean[] requeueFailed = { false };
+        waitingClients.compute(tableKey, (k,v)->{
+            if (v==null) {
+                // first waiter again: an orphaned generation goes back to the normal queue
+                // 重新有了等待者：孤儿任务回到正常队列
+                if (!reviveGeneration(k)) {
+                    requeueFailed[0] = true;
+                    return null;
+                }
+                v = Collections.synchronizedList(new ArrayList<>());
+            }
+            v.add(waiter);
             return v;
         });
+        if (requeueFailed[0])
+            return false;
 
         // if future already completed, schedule immediate delivery
         //如果未来已经完成，安排立即交货
         if (fut.isDone()) {
             try {
                 KeyResult res = fut.get();
-                deliverResultToWaitingClients(name, res);
+                deliverResultToWaitingClients(tableKey, res);
             } catch (Exception e) {
-                // generation errored
-                System.err.println("Generation errored for " + name);
-                closeChannel(key);
+                // generation errored, or was never queued because the queue was full 生成失败，或因队列满未能入队
+                boolean busy = e.getCause() instanceof RejectedExecutionException;
+                if (!busy) Log.warn("Generation errored for {}", name);
+                deliverResultToWaitingClients(tableKey, null, busy);
+            }
+        }
+        return true;
+    }
+
+    // the owning node answered a forwarded generation. The result is handed on but not kept: the owner
+    // caches and stores it, and the next request for the name is forwarded again.
+    // 所有者节点回复了转发的生成；结果只交付不保留，由所有者缓存和存储，下次请求再次转发
+    void forwarded(PeerLink.Forward f, KeyResult res) {
+        f.future.complete(res);
+        nameTable.remove(f.tableKey, f.future);
+        deliverResultToWaitingClients(f.tableKey, res);
+    }
+
+    // busy: the owner was busy or unreachable, worth retrying 所有者繁忙或不可达，可稍后重试
+    void forwardFailed(PeerLink.Forward f, boolean busy, String why) {
+        metrics.forwardFailed.increment();
+        if (Log.debug()) Log.debug("Forwarding '{}' failed: {}", f.name, why);
+        f.future.completeExceptionally(busy ? new RejectedExecutionException(why) : new IOException(why));
+        nameTable.remove(f.tableKey, f.future);
+        deliverResultToWaitingClients(f.tableKey, null, busy);
+    }
+
+    // false if the generation queue is full; the caller answers BUSY 生成队列已满时返回 false，由调用方回复 BUSY
+    private boolean submitGeneration(String name, KeyProfile profile, CompletableFuture<KeyResult> newF) {
+        String n = profile.tableKey(name);
+        GenerationTask task = new GenerationTask(name, profile, newF);
+        generations.put(n, task);
+        try {
+            task.enqueuedNanos = System.nanoTime();
+            generatorPool.execute(task);
+        } catch (RejectedExecutionException e) {
+            generations.remove(n, task);
+            markSaturated();
+            // requests that coalesced onto this name in the meantime get BUSY too 期间合并到该名称的请求同样回复 BUSY
+            newF.completeExceptionally(e);
+            nameTable.remove(n, newF);
+            deliverResultToWaitingClients(n, null, true);
+            return false;
+        }
+        if (generationQueue.remainingCapacity() == 0)
+            markSaturated();
+        return true;
+    }
+
+    // A queued generation. It sits in exactly one place: the generator queue, the background lane,
+    // or nowhere (dropped, kept in generations so a new request can requeue it). State changes happen
+    // under the waitingClients lock of its name; only the start of run() races with them.
+    // 排队中的生成任务，只会位于生成队列、后台队列或被丢弃三者之一；状态变化在该名称的 waitingClients 锁内进行
+    private static final int QUEUED = 0, BACKGROUND = 1, DROPPED = 2, RUNNING = 3;
+
+    private final class GenerationTask implements Runnable {
+        final String name;
+        final KeyProfile profile;
+        final String tableKey;
+        final CompletableFuture<KeyResult> future;
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        volatile long enqueuedNanos;
+        // part of a warm-up batch rather than a client request 属于预热批次，而不是客户端请求
+        boolean warm;
+
+        GenerationTask(String name, KeyProfile profile, CompletableFuture<KeyResult> future) {
+            this.name = name;
+            this.profile = profile;
+            this.tableKey = profile.tableKey(name);
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(QUEUED, RUNNING) && !state.compareAndSet(BACKGROUND, RUNNING))
+                return;
+            try {
+                generate(this);
+            } finally {
+                generations.remove(tableKey, this);
+            }
+        }
+    }
+
+    // the last waiter for tableKey went away; called under its waitingClients lock
+    // 某名称的最后一个等待者离开；在其 waitingClients 锁内调用
+    private void orphanGeneration(String tableKey) {
+        GenerationTask task = generations.get(tableKey);
+        // a running generation cannot be interrupted; its result is still kept or discarded at the end
+        // 正在运行的生成无法中断，结束时再决定保留还是丢弃结果
+        if (task == null || task.state.get() != QUEUED || !generatorPool.remove(task))
+            return;
+        orphaned.increment();
+        checkDrained();
+        if (orphansToBackground) {
+            task.state.set(BACKGROUND);
+            try {
+                backgroundPool.execute(task);
+                backgrounded.increment();
+                if (Log.info()) Log.info("Nobody waits for '{}' any more, moved to the background lane ({})", task.name, queueStats());
+                return;
+            } catch (RejectedExecutionException e) {
+                // background lane full as well 后台队列也满了
+            }
+        }
+        task.state.set(DROPPED);
+        dropped.increment();
+        if (Log.info()) Log.info("Nobody waits for '{}' any more, dropped ({})", task.name, queueStats());
+    }
+
+    // a waiter arrived for tableKey; moves an orphaned generation back to the normal queue.
+    // false if the queue is full (the generation stays where it was). Called under the waitingClients lock.
+    // 有新的等待者时把孤儿任务移回正常队列；队列满时返回 false，任务保持原状
+    private boolean reviveGeneration(String tableKey) {
+        GenerationTask task = generations.get(tableKey);
+        if (task == null)
+            return true;
+        int s = task.state.get();
+        if (s == BACKGROUND && task.warm) {
+            // its WarmBatch is in the background lane, not the task itself; whoever moves it first wins
+            // 后台队列中的是所属 WarmBatch 而不是任务本身；先改状态者获胜
+            if (!task.state.compareAndSet(BACKGROUND, QUEUED))
+                return true;
+        } else if (s == BACKGROUND) {
+            if (!backgroundPool.remove(task))
+                return true; // already picked up by the background thread 后台线程已开始执行
+        } else if (s != DROPPED) {
+            return true;
+        }
+        task.state.set(QUEUED);
+        try {
+            task.enqueuedNanos = System.nanoTime();
+            generatorPool.execute(task);
+        } catch (RejectedExecutionException e) {
+            markSaturated();
+            task.state.set(s);
+            if (s == BACKGROUND) {
+                try {
+                    backgroundPool.execute(task);
+                } catch (RejectedExecutionException full) {
+                    task.state.set(DROPPED);
+                    dropped.increment();
+                }
+            }
+            return false;
+        }
+        promoted.increment();
+        if (task.warm) Log.info("'{}' was asked for during warm-up, moved to the generator queue", task.name);
+        else Log.info("'{}' is wanted again, back in the generator queue", task.name);
+        if (generationQueue.remainingCapacity() == 0)
+            markSaturated();
+        return true;
+    }
+
+    // withdraws a closed connection's waiter; the last one out orphans the generation
+    // 撤回已关闭连接的等待项；最后一个离开时该生成任务成为孤儿
+    void withdrawWaiter(PendingDelivery pd) {
+        waitingClients.computeIfPresent(pd.tableKey, (k, v) -> {
+            v.remove(pd);
+            if (!v.isEmpty())
+                return v;
+            orphanGeneration(k);
+            return null;
+        });
+    }
+
+    private void generate(GenerationTask task) {
+        checkDrained();
+        try {
+            long t0 = System.nanoTime();
+            if (!task.warm) metrics.queueWait.record(t0 - task.enqueuedNanos);
+            KeyResult res = generateKeyAndCert(task.name, task.profile);
+            finish(task, res, System.nanoTime() - t0);
+        } catch (Throwable t) {
+            fail(task, t);
+        }
+    }
+
+    private void finish(GenerationTask task, KeyResult res, long took) {
+        String n = task.tableKey;
+        CompletableFuture<KeyResult> newF = task.future;
+        ProfileStats ps = stats(task.profile);
+        ps.generated.increment();
+        ps.generationNanos.add(took);
+        metrics.generation.record(took);
+        newF.complete(res);
+        if (!task.warm && !keepOrphanResults && !waitingClients.containsKey(n)) {
+            // nobody asked for it any more and we were told not to keep such results
+            // 已无人等待且配置为不保留孤儿结果
+            nameTable.remove(n, newF);
+            deliverResultToWaitingClients(n, res);
+            return;
+        }
+        if (persistentStore)
+            saveToStore(n, res);
+        cache.admit(n, newF, res);
+        // upon completion, deliver to waiting clients (the selector thread will do actual write)
+        //完成后，交付给等待的客户端（选择器线程将执行实际写入）
+        deliverResultToWaitingClients(n, res);
+    }
+
+    private void fail(GenerationTask task, Throwable t) {
+        task.future.completeExceptionally(t);
+        Log.error("Generation failed for '{}'", task.name, t);
+        // let the waiters know instead of leaving them hanging 通知等待者，而不是让它们一直挂起
+        nameTable.remove(task.tableKey, task.future);
+        deliverResultToWaitingClients(task.tableKey, null);
+    }
+
+    // Warm-up: registers names nobody asked for yet as background generations and queues them as one
+    // WarmBatch in the background lane. Names already in nameTable or the store are skipped. A client
+    // asking for one of them before the batch starts moves it to the generator queue (reviveGeneration).
+    // Returns how many names were queued, or -1 (nothing queued) when the background lane is full.
+    // 预热：把尚无人请求的名称登记为后台生成任务，作为一个 WarmBatch 放入后台队列；已在 nameTable 或存储中的名称跳过。
+    // 批次开始前有客户端请求其中的名称时，该名称会被移到生成队列。返回排队数量，后台队列满时返回 -1
+    int warm(List<String> names, KeyProfile profile, Warmer progress) {
+        List<GenerationTask> tasks = new ArrayList<>(names.size());
+        for (String name : names) {
+            String n = profile.tableKey(name);
+            if (nameTable.containsKey(n) || (store != null && store.contains(n)))
+                continue;
+            // each node warms only its own names 每个节点只预热自己拥有的名称
+            if (ring != null && !ring.ownedBySelf(n))
+                continue;
+            CompletableFuture<KeyResult> fut = new CompletableFuture<>();
+            if (nameTable.putIfAbsent(n, fut) != null)
+                continue;
+            GenerationTask task = new GenerationTask(name, profile, fut);
+            task.warm = true;
+            task.state.set(BACKGROUND);
+            generations.put(n, task);
+            tasks.add(task);
+        }
+        if (tasks.isEmpty())
+            return 0;
+        try {
+            backgroundPool.execute(new WarmBatch(tasks, progress));
+        } catch (RejectedExecutionException e) {
+            for (GenerationTask task : tasks) {
+                // a client that joined meanwhile may already have moved it to the generator queue 期间加入的客户端可能已把它移到生成队列
+                if (!task.state.compareAndSet(BACKGROUND, DROPPED))
+                    continue;
+                generations.remove(task.tableKey, task);
+                task.future.completeExceptionally(e);
+                nameTable.remove(task.tableKey, task.future);
+                deliverResultToWaitingClients(task.tableKey, null, true);
             }
+            return -1;
+        }
+        return tasks.size();
+    }
+
+    // client generations queued or running; the warmer holds back while there are any 客户端的生成任务数，有任务时预热暂停
+    boolean liveBacklog() {
+        return saturated.get() || !generationQueue.isEmpty();
+    }
+
+    int backgroundDepth() {
+        return backgroundPool.getQueue().size();
+    }
+
+    // One warm-up batch on the background lane. Key pairs are made here rather than taken from the
+    // pools (those stay for live requests); tasks are claimed only after that, so a client promoting one
+    // in the meantime never waits for the rest of the batch, and the claimed ones are signed together.
+    // 后台队列中的一个预热批次：密钥对在这里生成，不占用留给实时请求的密钥池；生成完再认领任务，
+    // 期间被客户端提升的任务不必等整个批次，认领到的任务一起批量签名
+    private final class WarmBatch implements Runnable {
+        private final List<GenerationTask> tasks;
+        private final Warmer progress;
+
+        WarmBatch(List<GenerationTask> tasks, Warmer progress) {
+            this.tasks = tasks;
+            this.progress = progress;
+        }
+
+        @Override
+        public void run() {
+            KeyProfile profile = tasks.get(0).profile;
+            List<GenerationTask> claimed = new ArrayList<>(tasks.size());
+            List<KeyPair> pairs = new ArrayList<>(tasks.size());
+            // claimed tasks already handed to finish() 已交给 finish() 的已认领任务数
+            int finished = 0;
+            long t0 = System.nanoTime();
+            try {
+                KeyPair[] made = new KeyPair[tasks.size()];
+                for (int i = 0; i < made.length; i++)
+                    if (tasks.get(i).state.get() == BACKGROUND)
+                        made[i] = profile.generateKeyPair();
+                for (int i = 0; i < made.length; i++) {
+                    GenerationTask task = tasks.get(i);
+                    if (made[i] != null && task.state.compareAndSet(BACKGROUND, RUNNING)) {
+                        claimed.add(task);
+                        pairs.add(made[i]);
+                    }
+                }
+                if (claimed.isEmpty())
+                    return;
+                String[] names = new String[claimed.size()];
+                for (int i = 0; i < names.length; i++) names[i] = claimed.get(i).name;
+                KeyResult[] results = signingContext().issueAll(names, pairs.toArray(new KeyPair[0]));
+                long each = (System.nanoTime() - t0) / claimed.size();
+                for (int i = 0; i < results.length; i++) {
+                    finish(claimed.get(i), results[i], each);
+                    finished++;
+                }
+                progress.generated(results.length);
+            } catch (Throwable t) {
+                // only the tasks that did not complete; a finished result stays in the table
+                // 只让未完成的任务失败；已完成的结果留在表中
+                int failed = 0;
+                for (GenerationTask task : claimed.subList(finished, claimed.size())) {
+                    if (task.future.isDone() && !task.future.isCompletedExceptionally())
+                        continue;
+                    fail(task, t);
+                    failed++;
+                }
+                progress.failed(failed);
+                // unclaimed tasks would otherwise sit in nameTable unfinished 未认领的任务不能一直留在 nameTable 中
+                for (GenerationTask task : tasks) {
+                    if (task.state.compareAndSet(BACKGROUND, RUNNING)) {
+                        claimed.add(task);
+                        fail(task, t);
+                        progress.failed(1);
+                    }
+                }
+            } finally {
+                for (GenerationTask task : claimed)
+                    generations.remove(task.tableKey, task);
+                // promoted tasks were generated by the normal queue 被提升的任务由普通队列生成
+                progress.promoted(tasks.size() - claimed.size());
+            }
+        }
+    }
+
+    // BUSY for v2, close for legacy clients (they have no way to hear "retry later")
+    // v2 回复 BUSY，旧客户端直接关闭（旧协议无法表达“稍后重试”）
+    private void busy(SelectionKey key, ClientAttachment att, int reqId) {
+        PendingDelivery pd = new PendingDelivery(att, reqId);
+        pd.busy = true;
+        startResponse(key, pd);
+    }
+
+    private KeyResult loadFromStore(String name) {
+        return store == null ? null : store.load(name);
+    }
+
+    private void saveToStore(String name, KeyResult res) {
+        if (store == null)
+            return;
+        try {
+            store.append(name, res);
+        } catch (IOException e) {
+            // the client still gets its key, it just will not survive a restart
+            Log.warn("Store write failed for '{}': {}", name, e);
         }
     }
 
     // Called by generator thread after completion to wake selector and attach buffers
-    // 当密钥生成完成后，将结果分发给所有等待该名称的客户端。
+    // 当密钥生成完成后，将结果分发给所有等待该名称的客户端。res == null means generation failed
     private void deliverResultToWaitingClients(String name, KeyResult res) {
-        List<ClientAttachment> clients = waitingClients.remove(name);
+        deliverResultToWaitingClients(name, res, false);
+    }
+
+    private void deliverResultToWaitingClients(String name, KeyResult res, boolean busy) {
+        List<PendingDelivery> clients = waitingClients.remove(name);
         if (clients == null || clients.isEmpty()) {
             return;
         }
-        // Prepare bytes (protocol: 4 bytes len of key, key bytes, 4 bytes len of cert, cert bytes)
-        // 准备字节（协议：密钥4字节len，密钥字节，证书4字节len，证书字节）
-        byte[] keyBytes = res.privateKeyPem.getBytes(StandardCharsets.US_ASCII);
-        byte[] certBytes = res.certPem.getBytes(StandardCharsets.US_ASCII);
-        int total = 4 + keyBytes.length + 4 + certBytes.length;
-        ByteBuffer combined = ByteBuffer.allocate(total);
-        combined.putInt(keyBytes.length);
-        combined.put(keyBytes);
-        combined.putInt(certBytes.length);
-        combined.put(certBytes);
-        combined.flip();
-
-        synchronized (pendingDeliveries) {
-            for (ClientAttachment ca : clients) {
-                // attach a duplicate buffer for each channel (duplicate shares content but independent position)
-                //为每个通道附加一个重复缓冲区（重复共享内容但独立位置）
-                ByteBuffer dup = combined.asReadOnlyBuffer();
-                pendingDeliveries.add(new PendingDelivery(ca, dup));
+        // route each client to the reactor that owns its channel, wake each reactor once
+        // 把每个客户端交给拥有其连接的反应器，每个反应器只唤醒一次
+        boolean[] touched = new boolean[reactors.length];
+        synchronized (clients) {
+            for (PendingDelivery pd : clients) {
+                // the reactor gives each channel its own view of the encoded result
+                // 反应器为每个通道创建编码结果的独立视图
+                pd.result = res;
+                pd.busy = busy;
+                Reactor r = pd.handOff();
+                if (r != null) touched[r.id] = true;
             }
         }
-        selector.wakeup();
+        for (int i = 0; i < touched.length; i++)
+            if (touched[i]) reactors[i].wakeup();
     }
 
-    // queue used to pass pending deliveries to selector thread
-    // 用于将挂起的传递传递给选择器线程的队列
+    // a client waiting for a name; handed from generator threads to the reactor owning the client
+    // (or, for the virtual-thread front end, to the connection's writer thread)
+    // 等待某个名称的客户端；由生成线程交给拥有该客户端的反应器（虚拟线程前端则交给连接的写线程）
     static class PendingDelivery {
         final ClientAttachment client;
-        final ByteBuffer buffer;
-        PendingDelivery(ClientAttachment c, ByteBuffer b){this.client=c; this.buffer=b;}
+        final int requestId;
+        String tableKey;  // name + profile this client waits for 等待的名称（含算法）
+        boolean forwarded; // sent by another cluster node, always served here 来自其他集群节点，总在本节点处理
+        KeyResult result; // set before the hand-off, null if generation failed 交付前设置，失败时为 null
+        String error;     // reason sent to v2 clients when result is null 结果为 null 时发给 v2 客户端的原因
+        boolean busy;     // rejected because the generation queue was full 因生成队列已满被拒绝
+        final long receivedNanos = System.nanoTime(); // when the request was parsed 收到请求的时间
+        PendingDelivery(ClientAttachment c, int requestId){this.client=c; this.requestId=requestId;}
+
+        // passes the finished delivery on; returns the reactor to wake, if any 转交已完成的交付，返回需要唤醒的反应器
+        Reactor handOff() {
+            client.reactor.deliver(this);
+            return client.reactor;
+        }
+    }
+
+    // queues the reply for a waiting client; called on the owning reactor thread
+    // 为等待的客户端排队回复；在所属反应器线程上调用
+    void startResponse(SelectionKey key, PendingDelivery pd) {
+        ClientAttachment att = pd.client;
+        if (att.waits != null)
+            att.waits.remove(pd);
+        if (att.protocol == PROTOCOL_V2)
+            att.outstanding--;
+        Response resp = responseFor(pd, att.protocol == PROTOCOL_V2);
+        if (resp == null) {
+            closeChannel(key);
+            return;
+        }
+        if (att.writing == null) {
+            att.writing = resp;
+            att.lastWriteNanos = resp.queuedNanos;
+        } else {
+            if (att.queued == null) att.queued = new ArrayDeque<>();
+            att.queued.add(resp);
+        }
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    // the reply for a finished waiter, or null for a legacy client without a result (it is closed instead)
+    // 已完成等待者的回复；旧客户端没有结果时返回 null（改为直接关闭）
+    Response responseFor(PendingDelivery pd, boolean v2) {
+        Response resp;
+        if (pd.busy)
+            rejectedRequests.increment();
+        if (v2) {
+            resp = pd.busy
+                    ? new Response(new ByteBuffer[] { ProtocolV2.busy(pd.requestId, retryAfterMs) }, null, 0, 0)
+                    : pd.result != null
+                    ? Response.of(ProtocolV2.resultHeader(pd.requestId, pd.result.wireLength), pd.result)
+                    : new Response(new ByteBuffer[] { ProtocolV2.error(pd.requestId,
+                            pd.error != null ? pd.error : "generation failed") }, null, 0, 0);
+        } else {
+            if (pd.result == null)
+                return null;
+            resp = Response.of(null, pd.result);
+        }
+        resp.requestNanos = pd.receivedNanos;
+        resp.queuedNanos = System.nanoTime();
+        return resp;
     }
-    private final List<PendingDelivery> pendingDeliveries = new LinkedList<>();
 
     // NIO的非阻塞写入
-    private void write(SelectionKey key) throws IOException {
+    void write(SelectionKey key) throws IOException {
         ClientAttachment att = (ClientAttachment) key.attachment();
         SocketChannel sc = att.channel;
-        if (att.writeBuffer == null) {
-            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
-            return;
+        while (att.writing != null) {
+            Response w = att.writing;
+            long before = w.written;
+            boolean done = w.writeTo(sc);
+            if (w.written > before) {
+                att.lastWriteNanos = System.nanoTime();
+                metrics.bytesWritten.add(w.written - before);
+                if (before == 0)
+                    metrics.timeToFirstByte.record(System.nanoTime() - w.requestNanos);
+            }
+            if (!done)
+                return; // socket buffer full, wait for the next OP_WRITE 套接字缓冲区满，等待下一次可写
+            metrics.writeTime.record(System.nanoTime() - w.queuedNanos);
+            metrics.responses.increment();
+            if (att.protocol != PROTOCOL_V2) {
+                // write complete -> close connection gracefully
+                if (Log.debug()) Log.debug("Finished sending to {}; closing", sc.getRemoteAddress());
+                closeChannel(key);
+                return;
+            }
+            att.writing = att.queued == null ? null : att.queued.poll();
         }
-        att.writeBuffer.mark();
-        int written = sc.write(att.writeBuffer);
-        if (!att.writeBuffer.hasRemaining()) {
-            // write complete -> close connection gracefully
-            System.out.println("Finished sending to " + sc.getRemoteAddress() + "; closing");
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        closeIfIdle(key, att);
+    }
+
+    // v2: close once the client stopped sending and every request is answered
+    // v2：客户端停止发送且所有请求都已回复后关闭
+    private void closeIfIdle(SelectionKey key, ClientAttachment att) {
+        if (att.inputClosed && att.outstanding == 0 && att.writing == null)
             closeChannel(key);
-        }
     }
 
-    private void closeChannel(SelectionKey key) {
-        try {
-            SocketChannel sc = (SocketChannel) key.channel();
-            System.out.println("Closing connection: " + sc.getRemoteAddress());
-        } catch (Exception e) {}
+    void closeChannel(SelectionKey key) {
+        ClientAttachment att = (ClientAttachment) key.attachment();
+        if (att.closed)
+            return;
+        att.closed = true;
+        att.reactor.closed(att);
+        // stop waiting for names nobody will read any more 不再为无人读取的名称等待
+        if (att.waits != null) {
+            for (PendingDelivery pd : att.waits)
+                withdrawWaiter(pd);
+            att.waits = null;
+        }
+        if (Log.debug()) {
+            try {
+                Log.debug("Closing connection: {}", ((SocketChannel) key.channel()).getRemoteAddress());
+            } catch (IOException e) {}
+        }
         try { key.cancel(); key.channel().close(); } catch (IOException e) {}
     }
-    //NIO核心逻辑：单线程处理所有连接
+    // Called by the reactor's timing wheel when a connection's slot comes due: closes it if a deadline
+    // passed, otherwise schedules it for the earliest deadline still running (or a later recheck).
+    // 时间轮槽位到期时调用：超过截止时间则关闭，否则按最早的截止时间（或稍后复查）重新调度
+    //   read idle   - nothing received while we wait for the client (half a name, idle v2 connection)
+    //   write stall - a reply is queued but the client has not read any of it
+    //   lifetime    - connection open too long, whatever it is doing
+    void checkDeadlines(ClientAttachment att, long now) {
+        if (att.closed || recheckNanos == 0)
+            return;
+        SelectionKey key = att.channel.keyFor(att.reactor.selector());
+        if (key == null || !key.isValid())
+            return;
+        long next = now + recheckNanos;
+        if (lifetimeNanos > 0) {
+            long d = att.openedNanos + lifetimeNanos;
+            if (d - now <= 0) {
+                expire(key, att, metrics.expiredLifetime, "lifetime");
+                return;
+            }
+            if (d - next < 0) next = d;
+        }
+        // only while we are waiting for the client to send something 仅在等待客户端发送数据时
+        boolean waitingForClient = att.protocol == PROTOCOL_V2
+                ? att.outstanding == 0 && att.writing == null
+                : !att.nameReceived;
+        // idle links from other cluster nodes stay open 其他集群节点的空闲连接保持打开
+        if (readIdleNanos > 0 && waitingForClient && !att.peer && (key.interestOps() & SelectionKey.OP_READ) != 0) {
+            long d = att.lastReadNanos + readIdleNanos;
+            if (d - now <= 0) {
+                expire(key, att, metrics.expiredReadIdle, "read idle");
+                return;
+            }
+            if (d - next < 0) next = d;
+        }
+        if (writeStallNanos > 0 && att.writing != null) {
+            long d = att.lastWriteNanos + writeStallNanos;
+            if (d - now <= 0) {
+                expire(key, att, metrics.expiredWriteStall, "write stall");
+                return;
+            }
+            if (d - next < 0) next = d;
+        }
+        att.reactor.wheel().schedule(att, next);
+    }
+
+    private void expire(SelectionKey key, ClientAttachment att, LongAdder counter, String why) {
+        counter.increment();
+        if (Log.debug()) {
+            try {
+                Log.debug("Closing {} connection: {}", why, att.channel.getRemoteAddress());
+            } catch (IOException e) {}
+        }
+        closeChannel(key);
+    }
+
+    //NIO核心逻辑：接收线程 + N 个选择器循环处理所有连接
     public void startMainLoop() throws Exception {
+        Log.start(logLevel, logFile);
         Security.addProvider(new BouncyCastleProvider());
-        selector = Selector.open();
+        if (storeDir != null) {
+            long t0 = System.nanoTime();
+            store = KeyResultStore.open(new File(storeDir).toPath());
+            persistentStore = true;
+            System.out.printf("Store %s: %d entries indexed in %d ms%n",
+                    storeDir, store.size(), (System.nanoTime() - t0) / 1_000_000);
+        } else if (cacheBytes > 0) {
+            // evicted results need somewhere to go 被淘汰的结果需要落盘
+            Path dir = spillDir != null ? new File(spillDir).toPath()
+                    : Files.createTempDirectory("keyserver-spill");
+            // lost spilled results are just generated again, so no fsync per record 丢失的落盘结果只需重新生成，不必逐条刷盘
+            store = KeyResultStore.open(dir, false);
+            System.out.println("Spilling evicted results to " + dir);
+        }
+        cache = new ResultCache(cacheBytes, nameTable, store);
+        StatsEndpoint stats = new StatsEndpoint(this);
+        stats.registerJmx(port);
+        if (statsPort > 0)
+            stats.listen(statsPort);
+        if (clusterFile != null) {
+            ring = HashRing.load(Path.of(clusterFile), nodeId, port);
+            peers = new PeerLink[ring.size()];
+            for (int i = 0; i < ring.size(); i++)
+                if (ring.node(i) != ring.self())
+                    peers[i] = new PeerLink(this, ring.self(), ring.node(i));
+        }
         ServerSocketChannel ssc = ServerSocketChannel.open();
-        ssc.configureBlocking(false);
         ssc.bind(new InetSocketAddress(port));
-        ssc.register(selector, SelectionKey.OP_ACCEPT);
-        System.out.println("KeyServer listening on port " + port + " (generatorThreads=" + generatorThreads + ")");
-
-        while (true) {
-            selector.select();
-            // first, process pendingDeliveries (from generator threads)
-            //首先，处理pendingDeliveries（从生成器线程）
-            synchronized (pendingDeliveries) {
-                Iterator<PendingDelivery> it = pendingDeliveries.iterator();
-                while (it.hasNext()) {
-                    PendingDelivery pd = it.next();
-                    ClientAttachment ca = pd.client;
-                    SelectionKey key = ca.channel.keyFor(selector);
-                    if (key == null || !key.isValid()) {
-                        it.remove();
-                        continue;
-                    }
-                    ca.writeBuffer = pd.buffer;
-                    int ops = key.interestOps();
-                    key.interestOps(ops | SelectionKey.OP_WRITE);
-                    it.remove();
-                }
-            }
-
-            Iterator<SelectionKey> it2 = selector.selectedKeys().iterator();
-            while (it2.hasNext()) {
-                SelectionKey key = it2.next(); it2.remove();
-                try {
-                    if (key.isAcceptable()) accept(key);
-                    else if (key.isReadable()) read(key);
-                    else if (key.isWritable()) write(key);
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    try { key.channel().close(); } catch (IOException ioe) {}
-                }
+        for (KeyPairPool pool : keyPairPools.values())
+            pool.start();
+        if (virtualThreads) {
+            frontend = new VirtualThreadFrontend(this, readIdleNanos, writeStallNanos, lifetimeNanos);
+        } else {
+            for (Reactor r : reactors) {
+                Thread t = new Thread(r, "reactor-" + r.id);
+                t.setDaemon(true);
+                t.start();
             }
         }
+        System.out.println("KeyServer listening on port " + port + " (generatorThreads=" + generatorThreads
+                + (virtualThreads ? ", a virtual thread per connection"
+                        : ", reactors=" + reactors.length + (balanceByLoad ? ", by load" : ", round-robin")) + ")");
+        System.out.println("Generation queue capacity " + queueCapacity + ", when full "
+                + (rejectWhenBusy ? "answer BUSY (retry after " + retryAfterMs + " ms)" : "pause new connections")
+                + "; orphaned generations " + (orphansToBackground ? "move to the background lane" : "are dropped")
+                + (keepOrphanResults ? "" : ", orphan results discarded"));
+        System.out.println("Key profiles: " + keyPairPools.keySet() + ", default " + defaultProfile.id
+                + ", certificates signed with " + signatureAlgorithm);
+        for (KeyPairPool pool : keyPairPools.values())
+            System.out.println(pool);
+        if (ring != null)
+            System.out.println("Cluster " + clusterFile + ": " + ring);
+        if (warmFile != null) {
+            warmer = new Warmer(this, Path.of(warmFile), defaultProfile, warmRate, warmBatch);
+            warmer.start();
+        }
+        if (frontend != null)
+            frontend.acceptLoop(ssc);
+        else
+            acceptLoop(ssc);
     }
 
     // 使用BouncyCastle库生成密钥和证书
-    private KeyResult generateKeyAndCert(String subjectName) throws Exception {
-        System.out.println("Generating RSA 8192 key for '" + subjectName + "' (this will take time)...");
-        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
-        kpg.initialize(8192, new SecureRandom());
-        KeyPair kp = kpg.generateKeyPair();
-        System.out.println("Key pair generated for '" + subjectName + "'.");
-
-        // Build X.509 certificate
-        X500Name subj = new X500Name("CN=" + subjectName);
-        X500Name issuer = issuerX500;
-        BigInteger serial = new BigInteger(160, new SecureRandom());
-        Date notBefore = Date.from(ZonedDateTime.now().toInstant());
-        Date notAfter = Date.from(ZonedDateTime.now().plus(10, ChronoUnit.YEARS).toInstant());
-
-        SubjectPublicKeyInfo subPubInfo = SubjectPublicKeyInfo.getInstance(kp.getPublic().getEncoded());
-        X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(
-                issuer, serial, notBefore, notAfter, subj, subPubInfo
-        );
-        ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").setProvider("BC").build(issuerKey);
-        X509CertificateHolder holder = certBuilder.build(signer);
-        X509Certificate cert = new JcaX509CertificateConverter().setProvider("BC").getCertificate(holder);
-
-        // produce PEM strings
-        StringWriter swKey = new StringWriter();
-        try (PemWriter pw = new PemWriter(swKey)) {
-            pw.writeObject(new PemObject("PRIVATE KEY", kp.getPrivate().getEncoded()));
-        }
-        String privatePem = swKey.toString();
+    private KeyResult generateKeyAndCert(String subjectName, KeyProfile profile) throws Exception {
+        // take a ready pair from the pool; an empty pool generates inline (slow)
+        // 从池中取现成的密钥对；池空时同步生成（很慢）
+        KeyPairPool pool = keyPairPools.get(profile);
+        KeyPair kp = pool.take();
+        if (Log.debug()) Log.debug("Key pair ready for '{}' {}", subjectName, pool.toString());
+        return signingContext().issue(subjectName, kp);
+    }
 
-        StringWriter swCert = new StringWriter();
-        try (PemWriter pw = new PemWriter(swCert)) {
-            pw.writeObject(new PemObject("CERTIFICATE", cert.getEncoded()));
+    // the calling thread's signer, created on its first certificate 当前线程的签名上下文，首次签发时创建
+    SigningContext signingContext() throws OperatorCreationException {
+        SigningContext ctx = signing.get();
+        if (ctx == null) {
+            ctx = new SigningContext(issuerKey, signatureAlgorithm, issuerX500);
+            signing.set(ctx);
         }
-        String certPem = swCert.toString();
-
-        return new KeyResult(privatePem, certPem);
+        return ctx;
     }
 
     // helper to load issuer private key from PEM file
@@ -324,21 +1438,24 @@ public class KeyServer {
     }
 
     public static void main(String[] args) throws Exception {
-        if (args.length < 4) {
-            System.err.println("Usage: java KeyServer <port> <issuer-private-pem> \"<Issuer X500 Name>\" <generatorThreads>");
+        ServerOptions options = new ServerOptions();
+        int idx = options.parse(args);
+        if (idx < 0 || args.length - idx < 4) {
+            System.err.println("Usage: java KeyServer [options] <port> <issuer-private-pem> \"<Issuer X500 Name>\" <generatorThreads>");
             System.err.println("Example: java KeyServer 5555 issuer_key.pem \"CN=MyIssuer,O=Org,C=US\" 4");
+            ServerOptions.usage();
             System.exit(1);
         }
-        int port = Integer.parseInt(args[0]);
-        File issuerPem = new File(args[1]);
-        String issuerX500Str = args[2];
-        int genThreads = Integer.parseInt(args[3]);
+        int port = Integer.parseInt(args[idx]);
+        File issuerPem = new File(args[idx + 1]);
+        String issuerX500Str = args[idx + 2];
+        int genThreads = Integer.parseInt(args[idx + 3]);
 
         Security.addProvider(new BouncyCastleProvider());
         PrivateKey issuerKey = loadPrivateKeyFromPem(issuerPem);
         X500Name issuerX500 = new X500Name(issuerX500Str);
 
-        KeyServer server = new KeyServer(port, issuerKey, issuerX500, genThreads);
+        KeyServer server = new KeyServer(port, issuerKey, issuerX500, genThreads, options);
         server.startMainLoop();
     }
 }
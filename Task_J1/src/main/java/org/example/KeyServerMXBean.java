@@ -0,0 +1,30 @@
+package org.example;
+
+// JMX view of a running KeyServer (org.example:type=KeyServer,port=<port>)
+// 运行中 KeyServer 的 JMX 视图；时间单位为毫秒
+public interface KeyServerMXBean {
+    long getAccepts();
+    int getOpenConnections();
+    long getCacheHits();
+    long getDiskHits();
+    long getMisses();
+    long getCoalescedWaiters();
+    long getResponses();
+    long getBytesWritten();
+
+    int getQueueDepth();
+    long getRejectedRequests();
+    int getPausedConnections();
+
+    double getGenerationMillisP50();
+    double getGenerationMillisP99();
+    double getGenerationMillisMax();
+    double getQueueWaitMillisP99();
+    double getTimeToFirstByteMillisP50();
+    double getTimeToFirstByteMillisP99();
+    double getTimeToFirstByteMillisP999();
+    double getWriteMillisP99();
+
+    // the same text the stats port serves 与统计端口输出相同的文本
+    String getReport();
+}
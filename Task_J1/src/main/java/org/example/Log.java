@@ -0,0 +1,197 @@
+package org.example;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Asynchronous logger for the server hot paths 服务器热路径使用的异步日志
+//
+// Callers fill a slot of a pre-allocated ring buffer (message template + up to three arguments)
+// and return; a background thread formats the records and writes them to a file or stdout.
+// When the ring is full the record is dropped and counted, so a slow disk or console never
+// stalls a selector thread. Guard calls with the level check (if (Log.debug()) ...) so a
+// disabled level costs one volatile read and does not evaluate its arguments.
+// 调用方只填充预分配环形缓冲区的一个槽位就返回，由后台线程格式化并写出；缓冲区满时丢弃并计数，
+// 选择器线程永远不会因为磁盘或控制台变慢而阻塞。用级别判断包住调用，关闭的级别只需一次 volatile 读
+final class Log {
+    static final int DEBUG = 0, INFO = 1, WARN = 2, ERROR = 3, OFF = 4;
+    private static final String[] NAMES = { "DEBUG", "INFO ", "WARN ", "ERROR" };
+
+    private static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+    private static final DateTimeFormatter TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    // one ring slot; published == the sequence number it holds once it is complete
+    // 环形缓冲区的槽位；写完后 published 等于它保存的序号
+    private static final class Record {
+        volatile long published = -1;
+        long time;
+        int level;
+        String thread;
+        String message;
+        Object a0, a1, a2;
+    }
+
+    private static final Record[] ring = new Record[CAPACITY];
+    static {
+        for (int i = 0; i < CAPACITY; i++) ring[i] = new Record();
+    }
+    // next sequence to claim / next sequence the writer thread consumes 下一个可申请的序号 / 写线程下一个消费的序号
+    private static final AtomicLong claimed = new AtomicLong();
+    private static volatile long consumed = 0;
+    private static final LongAdder dropped = new LongAdder();
+
+    private static volatile int level = INFO;
+    private static Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+    private static Thread writer;
+
+    private Log() {}
+
+    // starts the writer thread; file == null logs to stdout 启动写线程；file 为 null 时输出到标准输出
+    static synchronized void start(int minLevel, String file) throws IOException {
+        level = minLevel;
+        if (writer != null)
+            return;
+        if (file != null)
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        writer = new Thread(Log::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drainRemaining, "log-flush"));
+    }
+
+    static int parseLevel(String s) {
+        return switch (s.toLowerCase()) {
+            case "debug" -> DEBUG;
+            case "info" -> INFO;
+            case "warn" -> WARN;
+            case "error" -> ERROR;
+            case "off" -> OFF;
+            default -> throw new IllegalArgumentException("Unknown log level '" + s + "'");
+        };
+    }
+
+    static boolean debug() { return level <= DEBUG; }
+    static boolean info() { return level <= INFO; }
+
+    static long dropped() { return dropped.sum(); }
+
+    static void debug(String msg, Object a0) { log(DEBUG, msg, a0, null, null); }
+    static void debug(String msg, Object a0, Object a1) { log(DEBUG, msg, a0, a1, null); }
+    static void info(String msg) { log(INFO, msg, null, null, null); }
+    static void info(String msg, Object a0) { log(INFO, msg, a0, null, null); }
+    static void info(String msg, Object a0, Object a1) { log(INFO, msg, a0, a1, null); }
+    static void warn(String msg) { log(WARN, msg, null, null, null); }
+    static void warn(String msg, Object a0) { log(WARN, msg, a0, null, null); }
+    static void warn(String msg, Object a0, Object a1) { log(WARN, msg, a0, a1, null); }
+    static void error(String msg, Object a0, Object a1) { log(ERROR, msg, a0, a1, null); }
+    static void error(String msg, Object a0) { log(ERROR, msg, a0, null, null); }
+
+    // "{}" in msg is replaced by the arguments in order; a trailing Throwable argument also gets its stack trace
+    // msg 中的 "{}" 依次替换为参数；多出来的 Throwable 参数会输出堆栈
+    static void log(int lvl, String msg, Object a0, Object a1, Object a2) {
+        if (lvl < level)
+            return;
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        Record r = ring[(int) (seq & MASK)];
+        r.time = System.currentTimeMillis();
+        r.level = lvl;
+        r.thread = Thread.currentThread().getName();
+        r.message = msg;
+        r.a0 = a0;
+        r.a1 = a1;
+        r.a2 = a2;
+        r.published = seq;
+    }
+
+    private static void drainLoop() {
+        long reportedDrops = 0;
+        StringBuilder sb = new StringBuilder(256);
+        while (true) {
+            int n = drain(sb);
+            long d = dropped.sum();
+            if (d != reportedDrops) {
+                write("log: dropped " + (d - reportedDrops) + " records (ring buffer full)\n");
+                reportedDrops = d;
+            }
+            if (n == 0) {
+                flush();
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+
+    private static synchronized void drainRemaining() {
+        drain(new StringBuilder(256));
+        flush();
+    }
+
+    // writes every published record, returns how many 写出所有已发布的记录并返回数量
+    private static synchronized int drain(StringBuilder sb) {
+        int n = 0;
+        long seq = consumed;
+        while (true) {
+            Record r = ring[(int) (seq & MASK)];
+            if (r.published != seq)
+                break;
+            sb.setLength(0);
+            format(sb, r);
+            r.a0 = r.a1 = r.a2 = null;
+            r.message = null;
+            seq++;
+            consumed = seq;
+            write(sb);
+            n++;
+        }
+        return n;
+    }
+
+    private static void format(StringBuilder sb, Record r) {
+        TIME.formatTo(Instant.ofEpochMilli(r.time), sb);
+        sb.append(' ').append(NAMES[r.level]).append(" [").append(r.thread).append("] ");
+        Object[] args = { r.a0, r.a1, r.a2 };
+        String m = r.message;
+        int arg = 0;
+        int from = 0;
+        int at;
+        while ((at = m.indexOf("{}", from)) >= 0 && arg < 3) {
+            sb.append(m, from, at).append(args[arg++]);
+            from = at + 2;
+        }
+        sb.append(m, from, m.length()).append('\n');
+        for (; arg < 3; arg++) {
+            if (args[arg] instanceof Throwable t) {
+                StringWriter sw = new StringWriter();
+                t.printStackTrace(new PrintWriter(sw));
+                sb.append(sw);
+            }
+        }
+    }
+
+    private static void write(CharSequence s) {
+        try {
+            out.append(s);
+        } catch (IOException e) {
+            dropped.increment();
+        }
+    }
+
+    private static void flush() {
+        try {
+            out.flush();
+        } catch (IOException ignored) {}
+    }
+}
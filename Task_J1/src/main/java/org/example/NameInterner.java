@@ -0,0 +1,78 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+// Turns name bytes from a read buffer into a String, reusing the instance from earlier requests
+// 把读缓冲区中的名称字节转换为 String，重复的名称直接复用之前的实例
+//
+// Direct-mapped table of recently seen names, one per reactor (not thread-safe). A repeated name is
+// hashed and compared straight from the buffer, so it costs no byte[] copy and no new String, and
+// nameTable.get() reuses the String's cached hash. Non-ASCII names are decoded but never cached.
+// 每个反应器一个的直接映射表（非线程安全）；重复的名称直接在缓冲区上计算哈希并比较，不复制也不创建新 String
+final class NameInterner {
+    private final String[] table;
+    private final int mask;
+    private long hits;
+    private long misses;
+
+    NameInterner(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        table = new String[capacity];
+        mask = capacity - 1;
+    }
+
+    // the ASCII name in src[pos, pos + len); src position and limit are not changed
+    // src[pos, pos + len) 中的 ASCII 名称；不改变 src 的 position 和 limit
+    String intern(ByteBuffer src, int pos, int len) {
+        int h = 0;
+        boolean ascii = true;
+        for (int i = 0; i < len; i++) {
+            int b = src.get(pos + i);
+            ascii &= b >= 0;
+            h = 31 * h + (b & 0xFF); // String.hashCode() for ASCII 对 ASCII 与 String.hashCode() 相同
+        }
+        int slot = (h ^ (h >>> 16)) & mask;
+        String cached = table[slot];
+        if (ascii && cached != null && cached.length() == len && cached.hashCode() == h && sameChars(cached, src, pos)) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        byte[] b = new byte[len];
+        src.get(pos, b);
+        String s = new String(b, StandardCharsets.US_ASCII);
+        if (ascii)
+            table[slot] = s;
+        return s;
+    }
+
+    private static boolean sameChars(String s, ByteBuffer src, int pos) {
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) != src.get(pos + i)) return false;
+        return true;
+    }
+
+    long hits() { return hits; }
+    long misses() { return misses; }
+
+    // index of the first 0 byte in buf[from, to), or -1; scans 8 bytes at a time (SWAR)
+    // buf[from, to) 中第一个 0 字节的下标，没有则返回 -1；每次检查 8 个字节
+    static int indexOfZero(ByteBuffer buf, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long v = buf.getLong(i);
+            // little-endian so the lowest set bit is the first byte in memory and borrows cannot fake an earlier hit
+            // 转成小端：最低的置位对应内存中最靠前的字节，借位不会造成更早的误判
+            if (buf.order() == ByteOrder.BIG_ENDIAN) v = Long.reverseBytes(v);
+            long zeros = (v - 0x0101010101010101L) & ~v & 0x8080808080808080L;
+            if (zeros != 0)
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+        }
+        for (; i < to; i++)
+            if (buf.get(i) == 0) return i;
+        return -1;
+    }
+}
@@ -0,0 +1,196 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Forwards generations to the cluster node that owns them, over one pipelined v2 connection
+// 通过一个流水线 v2 连接把生成请求转发给拥有该名称的集群节点
+//
+// Callers (reactors, connection threads) only enqueue; a writer thread connects on demand, says
+// FORWARDED and writes the requests, and a reader thread hands each reply back to the KeyServer.
+// A lost connection fails the requests in flight (answered BUSY); after a failed connect the peer is
+// treated as down for RETRY_NANOS so requests fail fast instead of each waiting for a connect.
+// 调用方只负责入队；写线程按需连接、发送 FORWARDED 并写出请求，读线程把每个回复交回 KeyServer。
+// 连接断开时未完成的请求失败（回复 BUSY）；连接失败后在 RETRY_NANOS 内直接失败，不再逐个尝试连接
+final class PeerLink {
+    static final int CONNECT_TIMEOUT_MS = 2000;
+    static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // one forwarded generation: the name, and the future its local waiters hang on 一次转发的生成及本地等待者所等的 future
+    static final class Forward {
+        final String name;
+        final KeyProfile profile;
+        final String tableKey;
+        final CompletableFuture<KeyServer.KeyResult> future;
+
+        Forward(String name, KeyProfile profile, String tableKey, CompletableFuture<KeyServer.KeyResult> future) {
+            this.name = name;
+            this.profile = profile;
+            this.tableKey = tableKey;
+            this.future = future;
+        }
+    }
+
+    private final KeyServer server;
+    private final HashRing.Node self, peer;
+    private final BlockingQueue<Forward> outbox = new LinkedBlockingQueue<>();
+    // requests written and not answered yet, by request id 已写出尚未回复的请求
+    private final ConcurrentHashMap<Integer, Forward> inFlight = new ConcurrentHashMap<>();
+    // writer thread only, except that disconnect() clears them under the lock 仅写线程使用，disconnect() 在锁内清除
+    private Socket socket;
+    private OutputStream out;
+    private KeyProfile sentProfile;
+    private int nextId;
+    private long downUntil;
+
+    PeerLink(KeyServer server, HashRing.Node self, HashRing.Node peer) {
+        this.server = server;
+        this.self = self;
+        this.peer = peer;
+        Thread t = new Thread(this::writeLoop, "peer-" + peer.id);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    void forward(Forward f) {
+        outbox.add(f);
+    }
+
+    int inFlight() {
+        return inFlight.size() + outbox.size();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Forward f;
+            try {
+                f = outbox.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Socket s = null;
+            OutputStream o;
+            try {
+                synchronized (this) {
+                    if (socket == null) {
+                        if (System.nanoTime() - downUntil < 0) {
+                            server.forwardFailed(f, true, "node " + peer.id + " is down");
+                            continue;
+                        }
+                        connect();
+                    }
+                    s = socket;
+                    o = out;
+                    int id = nextId++;
+                    inFlight.put(id, f);
+                    if (f.profile != sentProfile) {
+                        write(ProtocolV2.setProfile(f.profile.id));
+                        sentProfile = f.profile;
+                    }
+                    write(ProtocolV2.request(id, f.name));
+                }
+                // flush once the queue is empty, so a burst goes out in few packets 队列空了才刷新，突发请求合并发送
+                if (outbox.isEmpty())
+                    o.flush();
+            } catch (IOException e) {
+                if (s == null) {
+                    Log.warn("Cannot connect to node {}: {}", peer, e.toString());
+                    synchronized (this) {
+                        downUntil = System.nanoTime() + RETRY_NANOS;
+                    }
+                    server.forwardFailed(f, true, "node " + peer.id + " unreachable");
+                } else {
+                    disconnect(s, e);
+                }
+            }
+        }
+    }
+
+    // called with the lock held 在锁内调用
+    private void connect() throws IOException {
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(peer.host, peer.port), CONNECT_TIMEOUT_MS);
+            s.setTcpNoDelay(true);
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+        out = new BufferedOutputStream(s.getOutputStream());
+        sentProfile = null;
+        write(ProtocolV2.hello());
+        write(ProtocolV2.forwarded(self.id));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        Thread t = new Thread(() -> readLoop(s, in), "peer-" + peer.id + "-reader");
+        t.setDaemon(true);
+        t.start();
+        Log.info("Connected to node {}", peer);
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        out.write(frame.array(), frame.position(), frame.remaining());
+    }
+
+    private void readLoop(Socket s, DataInputStream in) {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                int len = in.readInt();
+                int reqId = in.readInt();
+                Forward f = inFlight.remove(reqId);
+                if (f == null)
+                    throw new IOException("unexpected request id " + reqId);
+                switch (type) {
+                    case ProtocolV2.RESULT -> {
+                        byte[] wire = new byte[len - 4];
+                        in.readFully(wire);
+                        server.forwarded(f, new KeyServer.KeyResult(ByteBuffer.wrap(wire)));
+                    }
+                    case ProtocolV2.BUSY -> {
+                        in.readInt();
+                        server.forwardFailed(f, true, "node " + peer.id + " is busy");
+                    }
+                    case ProtocolV2.ERROR -> {
+                        byte[] msg = new byte[len - 4];
+                        in.readFully(msg);
+                        server.forwardFailed(f, false, "node " + peer.id + ": " + new String(msg, StandardCharsets.US_ASCII));
+                    }
+                    default -> throw new IOException("unexpected frame type " + type);
+                }
+            }
+        } catch (IOException e) {
+            disconnect(s, e);
+        }
+    }
+
+    // drops the connection s (if still current) and fails everything written on it
+    // 断开连接 s（若仍是当前连接），其上已写出的请求全部失败
+    private void disconnect(Socket s, IOException cause) {
+        synchronized (this) {
+            if (socket != s)
+                return;
+            socket = null;
+            out = null;
+            try { s.close(); } catch (IOException e) {}
+            Log.warn("Lost connection to node {}, failing {} requests in flight", peer, inFlight.size());
+            for (Integer id : inFlight.keySet()) {
+                Forward f = inFlight.remove(id);
+                if (f != null)
+                    server.forwardFailed(f, true, "connection to node " + peer.id + " lost");
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Framed, pipelined protocol v2 on a persistent connection 持久连接上的分帧流水线协议 v2
+//
+// A v2 connection starts with MAGIC, VERSION. Legacy clients start with an ASCII name,
+// so MAGIC (not ASCII) tells the two apart. 连接以 MAGIC、VERSION 开头；旧客户端以 ASCII 名称开头
+//
+// Every frame: [u8 type][int payloadLen][payload]
+//   client -> server
+//     REQUEST  [int reqId][name bytes]
+//     BATCH    [int count] then count x ([int reqId][u16 nameLen][name bytes])
+//     SET_PROFILE [profile id, e.g. "ec-p256"]  applies to the requests that follow 对后续请求生效
+//     FORWARDED [sender node id]  marks a cluster peer: its requests are served here, never forwarded again
+//                                 标记集群中的对等节点：其请求在本节点处理，不再转发
+//   server -> client (any order, as generations complete 按生成完成顺序回复，可乱序)
+//     RESULT   [int reqId][int keyLen][key][int certLen][cert]   (same blob as the legacy reply)
+//     ERROR    [int reqId][message bytes]
+//     BUSY     [int reqId][int retryAfterMs]   generation queue full, ask again later 生成队列已满，稍后重试
+final class ProtocolV2 {
+    static final byte MAGIC = (byte) 0xF2;
+    static final byte VERSION = 2;
+
+    static final byte REQUEST = 1;
+    static final byte BATCH = 2;
+    static final byte SET_PROFILE = 3;
+    static final byte FORWARDED = 4;
+    static final byte RESULT = (byte) 0x81;
+    static final byte ERROR = (byte) 0x82;
+    static final byte BUSY = (byte) 0x83;
+
+    static final int FRAME_HEADER = 5;
+    // upper bound on a client frame, enough for a large batch 客户端帧的上限
+    static final int MAX_FRAME = 1 << 20;
+    static final int MAX_NAME = 4096;
+
+    private ProtocolV2() {}
+
+    static ByteBuffer hello() {
+        return ByteBuffer.wrap(new byte[] { MAGIC, VERSION });
+    }
+
+    static ByteBuffer request(int reqId, String name) {
+        byte[] nb = name.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer b = ByteBuffer.allocate(FRAME_HEADER + 4 + nb.length);
+        b.put(REQUEST).putInt(4 + nb.length).putInt(reqId).put(nb);
+        return b.flip();
+    }
+
+    static ByteBuffer batch(int firstReqId, String[] names) {
+        byte[][] nbs = new byte[names.length][];
+        int len = 4;
+        for (int i = 0; i < names.length; i++) {
+            nbs[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+            len += 4 + 2 + nbs[i].length;
+        }
+        ByteBuffer b = ByteBuffer.allocate(FRAME_HEADER + len);
+        b.put(BATCH).putInt(len).putInt(names.length);
+        for (int i = 0; i < names.length; i++)
+            b.putInt(firstReqId + i).putShort((short) nbs[i].length).put(nbs[i]);
+        return b.flip();
+    }
+
+    static ByteBuffer setProfile(String profileId) {
+        byte[] pb = profileId.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer b = ByteBuffer.allocate(FRAME_HEADER + pb.length);
+        b.put(SET_PROFILE).putInt(pb.length).put(pb);
+        return b.flip();
+    }
+
+    static ByteBuffer forwarded(String nodeId) {
+        byte[] nb = nodeId.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer b = ByteBuffer.allocate(FRAME_HEADER + nb.length);
+        b.put(FORWARDED).putInt(nb.length).put(nb);
+        return b.flip();
+    }
+
+    // header in front of a KeyResult's wire bytes 结果帧的头部，后面紧跟结果的传输字节
+    static ByteBuffer resultHeader(int reqId, int wireLength) {
+        ByteBuffer b = ByteBuffer.allocate(FRAME_HEADER + 4);
+        b.put(RESULT).putInt(4 + wireLength).putInt(reqId);
+        return b.flip();
+    }
+
+    static ByteBuffer error(int reqId, String message) {
+        byte[] mb = message.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer b = ByteBuffer.allocate(FRAME_HEADER + 4 + mb.length);
+        b.put(ERROR).putInt(4 + mb.length).putInt(reqId).put(mb);
+        return b.flip();
+    }
+
+    static ByteBuffer busy(int reqId, int retryAfterMs) {
+        ByteBuffer b = ByteBuffer.allocate(FRAME_HEADER + 8);
+        b.put(BUSY).putInt(8).putInt(reqId).putInt(retryAfterMs);
+        return b.flip();
+    }
+}
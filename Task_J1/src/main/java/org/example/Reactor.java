@@ -0,0 +1,202 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One selector loop owning a subset of the client connections 一个选择器循环，负责一部分客户端连接
+// The acceptor hands new channels over with assign(); generator threads hand finished
+// results over with deliver(). Everything else happens on the reactor thread.
+// 接收线程通过 assign() 交付新连接，生成线程通过 deliver() 交付结果，其余都在本线程完成
+class Reactor implements Runnable {
+    // deliveries handled per loop iteration, so reads and accepts are not starved
+    // 每轮循环最多处理的交付数，避免读和接收被饿死
+    static final int DELIVERY_BATCH = 256;
+
+    final int id;
+    private final KeyServer server;
+    private final Selector selector;
+    // channels accepted by the acceptor thread, registered on the next loop iteration
+    // 接收线程接受的新连接，在下一轮循环中注册
+    private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+    // lock-free queue used to pass pending deliveries to this reactor's thread (many producers, one consumer)
+    // 无锁队列，将挂起的传递交给本反应器线程（多生产者，单消费者）
+    private final Queue<KeyServer.PendingDelivery> pendingDeliveries = new ConcurrentLinkedQueue<>();
+    // true while a selector.wakeup() is outstanding, so producers wake the selector at most once
+    // 已有未处理的唤醒时为 true，生产者最多唤醒选择器一次
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    // open connections owned by this reactor, used for load balancing 当前连接数，用于负载均衡
+    private final AtomicInteger connections = new AtomicInteger();
+    // connections registered without OP_READ while the generation queue is full (reactor thread only)
+    // 生成队列满时注册但不读取的连接（仅本线程访问）
+    private final ArrayDeque<SelectionKey> paused = new ArrayDeque<>();
+    private volatile int pausedCount = 0;
+    // read-idle / write-stall / lifetime deadlines of this reactor's connections 本反应器连接的各类截止时间
+    private final TimingWheel wheel;
+    private final TimingWheel.Expiry expiry;
+    // 512 x 100 ms: one turn covers 51.2 s, longer deadlines are rechecked lazily 一圈 51.2 秒
+    static final int WHEEL_SLOTS = 512;
+    static final long WHEEL_TICK_NANOS = 100_000_000L;
+    // reused by every read on this thread, and the names seen by it 本线程所有读取复用的缓冲区及见过的名称
+    static final int READ_BUFFER_SIZE = 16 * 1024;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final NameInterner names = new NameInterner(4096);
+
+    Reactor(int id, KeyServer server) throws IOException {
+        this.id = id;
+        this.server = server;
+        this.selector = Selector.open();
+        this.wheel = new TimingWheel(WHEEL_SLOTS, WHEEL_TICK_NANOS, System.nanoTime());
+        this.expiry = server::checkDeadlines;
+    }
+
+    TimingWheel wheel() {
+        return wheel;
+    }
+
+    ByteBuffer readBuffer() {
+        return readBuffer;
+    }
+
+    NameInterner names() {
+        return names;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    // called by the acceptor thread 由接收线程调用
+    void assign(SocketChannel sc) {
+        connections.incrementAndGet();
+        newChannels.add(sc);
+        wakeup();
+    }
+
+    // called by generator threads; the caller wakes the reactor once per batch with wakeup()
+    // 由生成线程调用；调用方每批只唤醒一次
+    void deliver(KeyServer.PendingDelivery pd) {
+        pendingDeliveries.add(pd);
+    }
+
+    // coalesced: only the first caller since the last loop iteration really wakes the selector
+    // 合并唤醒：自上一轮循环以来只有第一个调用者真正唤醒选择器
+    void wakeup() {
+        if (!wakeupPending.get() && wakeupPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    // called on this reactor's thread when one of its connections is closed 本线程上连接关闭时调用
+    void closed(KeyServer.ClientAttachment att) {
+        connections.decrementAndGet();
+        wheel.remove(att);
+    }
+
+    int paused() {
+        return pausedCount;
+    }
+
+    @Override
+    public void run() {
+        try {
+            boolean backlog = false;
+            while (true) {
+                // deliveries left over from the last batch -> just poll the channels
+                // 上一批还有剩余的交付时只做非阻塞轮询
+                // otherwise wake up in time for the next wheel tick 否则在时间轮下一个刻度前醒来
+                long timeout = wheel.timeoutMillis(System.nanoTime());
+                if (backlog) selector.selectNow();
+                else if (timeout > 0) selector.select(timeout);
+                else selector.select();
+                // clear before draining: anything queued from now on wakes us again
+                // 先清除标志再处理：此后入队的交付会再次唤醒选择器
+                wakeupPending.set(false);
+                registerNewChannels();
+                // the server wakes every reactor when the queue has drained 队列消化后服务器会唤醒所有反应器
+                if (!paused.isEmpty() && !server.pauseNewConnections())
+                    resumePaused();
+                // first, process pendingDeliveries (from generator threads)
+                //首先，处理pendingDeliveries（从生成器线程）
+                backlog = drainDeliveries();
+                wheel.advance(System.nanoTime(), expiry);
+
+                Iterator<SelectionKey> it2 = selector.selectedKeys().iterator();
+                while (it2.hasNext()) {
+                    SelectionKey key = it2.next(); it2.remove();
+                    try {
+                        if (key.isReadable()) server.read(key);
+                        else if (key.isWritable()) server.write(key);
+                    } catch (Exception ex) {
+                        Log.warn("Connection failed: {}", ex);
+                        server.closeChannel(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Reactor {} stopped: {}", id, e);
+        }
+    }
+
+    // hands at most DELIVERY_BATCH results to their channels; true if more are waiting
+    // 最多处理 DELIVERY_BATCH 个交付；还有剩余时返回 true
+    private boolean drainDeliveries() {
+        for (int n = 0; n < DELIVERY_BATCH; n++) {
+            KeyServer.PendingDelivery pd = pendingDeliveries.poll();
+            if (pd == null)
+                return false;
+            KeyServer.ClientAttachment ca = pd.client;
+            SelectionKey key = ca.channel.keyFor(selector);
+            if (key == null || !key.isValid())
+                continue;
+            server.startResponse(key, pd);
+        }
+        return !pendingDeliveries.isEmpty();
+    }
+
+    private void resumePaused() {
+        SelectionKey key;
+        long now = System.nanoTime();
+        while ((key = paused.poll()) != null) {
+            if (!key.isValid()) continue;
+            // the idle clock starts when we start reading 从开始读取时才计算空闲时间
+            ((KeyServer.ClientAttachment) key.attachment()).lastReadNanos = now;
+            key.interestOps(SelectionKey.OP_READ);
+        }
+        pausedCount = 0;
+    }
+
+    private void registerNewChannels() {
+        SocketChannel sc;
+        while ((sc = newChannels.poll()) != null) {
+            try {
+                sc.configureBlocking(false);
+                // pipelined v2 replies are written back to back; Nagle would hold each one behind the
+                // delayed ACK of the previous one 流水线回复连续写出，Nagle 会让每个回复等待上一个的延迟 ACK
+                sc.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                KeyServer.ClientAttachment attach = new KeyServer.ClientAttachment(sc, this);
+                attach.openedNanos = attach.lastReadNanos = System.nanoTime();
+                if (server.pauseNewConnections()) {
+                    // keep the socket but read nothing from it until the backlog drains 保留连接，积压消化前不读取
+                    paused.add(sc.register(selector, 0, attach));
+                    pausedCount = paused.size();
+                } else {
+                    sc.register(selector, SelectionKey.OP_READ, attach);
+                }
+                server.checkDeadlines(attach, attach.openedNanos);
+                if (Log.debug()) Log.debug("Accepted connection from {} on reactor {}", sc.getRemoteAddress(), id);
+            } catch (IOException e) {
+                connections.decrementAndGet();
+                try { sc.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Byte budget and LRU eviction for completed entries of KeyServer.nameTable
+// 为 nameTable 中已完成的条目提供内存预算和 LRU 淘汰
+//
+// Only completed results are tracked, so in-flight futures are never evicted.
+// Evicted results move to the disk tier and are reloaded from there on the next request.
+// admit() runs on reactor threads too, so victims are written to disk by a background spill thread;
+// they stay in the table (and keep answering requests) until they are on disk.
+// 只跟踪已完成的结果，进行中的 future 永远不会被淘汰；被淘汰的结果转移到磁盘层。
+// admit() 也会在反应器线程上调用，所以由后台线程写盘；写盘完成前结果仍留在表中，可以继续命中
+class ResultCache {
+    // rough per-entry heap cost besides the encoded result (map node, future, result, LRU entry)
+    // 除编码结果外每个条目的大致堆开销
+    static final int ENTRY_OVERHEAD = 256;
+
+    private static final class Entry {
+        final CompletableFuture<KeyServer.KeyResult> future;
+        final long bytes;
+        Entry(CompletableFuture<KeyServer.KeyResult> f, long b) { future = f; bytes = b; }
+    }
+
+    private final long maxBytes;
+    private final ConcurrentHashMap<String, CompletableFuture<KeyServer.KeyResult>> table;
+    private final KeyResultStore diskTier;
+    // writes victims to the disk tier off the caller's thread (null without a disk tier) 在调用方线程之外写盘
+    private final ExecutorService spiller;
+    // access-ordered: eldest entry is the least recently used 按访问顺序，最老的即最近最少使用
+    private final LinkedHashMap<String, Entry> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong spillFailures = new AtomicLong();
+
+    // maxBytes <= 0 means unbounded (nothing is ever evicted) maxBytes<=0 表示不限制
+    ResultCache(long maxBytes, ConcurrentHashMap<String, CompletableFuture<KeyServer.KeyResult>> table,
+                KeyResultStore diskTier) {
+        this.maxBytes = maxBytes;
+        this.table = table;
+        this.diskTier = diskTier;
+        this.spiller = maxBytes > 0 && diskTier != null ? Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "cache-spill");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    static long sizeOf(String name, KeyServer.KeyResult res) {
+        return name.length() + res.memoryBytes() + ENTRY_OVERHEAD;
+    }
+
+    // a result completed (generated or reloaded from disk); must not be called inside table.compute*
+    // 结果完成（生成或从磁盘加载）；不能在 table.compute* 内部调用
+    void admit(String name, CompletableFuture<KeyServer.KeyResult> fut, KeyServer.KeyResult res) {
+        if (maxBytes <= 0)
+            return;
+        List<Map.Entry<String, Entry>> victims = null;
+        synchronized (this) {
+            Entry prev = lru.put(name, new Entry(fut, sizeOf(name, res)));
+            if (prev != null)
+                bytes -= prev.bytes;
+            bytes += sizeOf(name, res);
+            Iterator<Map.Entry<String, Entry>> it = lru.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                it.remove();
+                bytes -= e.getValue().bytes;
+                if (victims == null) victims = new ArrayList<>();
+                victims.add(e);
+            }
+        }
+        if (victims != null) {
+            for (Map.Entry<String, Entry> v : victims) {
+                if (spiller != null)
+                    spiller.execute(() -> evict(v.getKey(), v.getValue()));
+                else
+                    evict(v.getKey(), v.getValue());
+            }
+        }
+    }
+
+    private void evict(String name, Entry victim) {
+        CompletableFuture<KeyServer.KeyResult> fut = victim.future;
+        // spill to disk first so a concurrent request can always find it somewhere
+        // 先写入磁盘层，保证并发请求总能在某处找到结果
+        try {
+            if (diskTier != null)
+                diskTier.append(name, fut.join());
+        } catch (IOException e) {
+            // keep it tracked (as most recently used) so the budget still counts it and a later admit can retry
+            // 仍然保留在 LRU 中并计入预算（作为最近使用），之后的 admit 会再次尝试淘汰
+            Log.warn("Spill failed for '{}', keeping it in memory: {}", name, e);
+            spillFailures.incrementAndGet();
+            synchronized (this) {
+                if (table.get(name) == fut && lru.putIfAbsent(name, victim) == null)
+                    bytes += victim.bytes;
+            }
+            return;
+        }
+        table.remove(name, fut);
+        evictions.incrementAndGet();
+    }
+
+    // request found a completed entry in memory 命中内存中已完成的条目
+    void hit(String name) {
+        hits.incrementAndGet();
+        if (maxBytes > 0) {
+            synchronized (this) {
+                lru.get(name);
+            }
+        }
+    }
+
+    void diskHit() { diskHits.incrementAndGet(); }
+    void miss() { misses.incrementAndGet(); }
+
+    long hits() { return hits.get(); }
+    long diskHits() { return diskHits.get(); }
+    long misses() { return misses.get(); }
+    long evictions() { return evictions.get(); }
+    long spillFailures() { return spillFailures.get(); }
+    synchronized long bytes() { return bytes; }
+    synchronized int entries() { return lru.size(); }
+    long maxBytes() { return maxBytes; }
+
+    @Override
+    public String toString() {
+        return "ResultCache[bytes=" + bytes() + "/" + (maxBytes > 0 ? maxBytes : "unbounded")
+                + " entries=" + entries() + " hits=" + hits() + " diskHits=" + diskHits()
+                + " misses=" + misses() + " evictions=" + evictions() + " spillFailures=" + spillFailures() + "]";
+    }
+}
@@ -0,0 +1,63 @@
+package org.example;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histograms and counters updated on the KeyServer hot paths 热路径上更新的延迟直方图与计数器
+// All times are in nanoseconds. 所有时间单位为纳秒
+class ServerMetrics {
+    // key pair + certificate, measured on the generator thread 生成密钥对和证书的耗时
+    final Histogram generation = new Histogram();
+    // from execute() until a generator thread picks the task up 从入队到被生成线程取走
+    final Histogram queueWait = new Histogram();
+    // from the request being parsed to the first reply byte handed to the socket 从收到请求到写出第一个字节
+    final Histogram timeToFirstByte = new Histogram();
+    // from the reply being queued on the connection to its last byte 从回复入队到写完最后一个字节
+    final Histogram writeTime = new Histogram();
+
+    final LongAdder accepts = new LongAdder();
+    // requests that attached to a generation already in flight 合并到进行中生成任务的请求
+    final LongAdder coalescedWaiters = new LongAdder();
+    final LongAdder bytesWritten = new LongAdder();
+    final LongAdder responses = new LongAdder();
+    // connections closed by the timing wheel 被时间轮关闭的连接
+    final LongAdder expiredReadIdle = new LongAdder();
+    final LongAdder expiredWriteStall = new LongAdder();
+    final LongAdder expiredLifetime = new LongAdder();
+    // cluster: generations sent to their owner node, of those failed, and requests other nodes sent here
+    // 集群：转发给所有者节点的生成、其中失败的，以及其他节点发来的请求
+    final LongAdder forwarded = new LongAdder();
+    final LongAdder forwardFailed = new LongAdder();
+    final LongAdder peerRequests = new LongAdder();
+
+    // "name value" lines, the format of the stats endpoint 统计端口使用的 "名称 值" 行格式
+    void appendTo(StringBuilder sb) {
+        line(sb, "accepts", accepts.sum());
+        line(sb, "coalesced_waiters", coalescedWaiters.sum());
+        line(sb, "responses", responses.sum());
+        line(sb, "bytes_written", bytesWritten.sum());
+        line(sb, "expired_read_idle", expiredReadIdle.sum());
+        line(sb, "expired_write_stall", expiredWriteStall.sum());
+        line(sb, "expired_lifetime", expiredLifetime.sum());
+        line(sb, "forwarded", forwarded.sum());
+        line(sb, "forward_failed", forwardFailed.sum());
+        line(sb, "peer_requests", peerRequests.sum());
+        histogram(sb, "generation_ms", generation);
+        histogram(sb, "queue_wait_ms", queueWait);
+        histogram(sb, "ttfb_ms", timeToFirstByte);
+        histogram(sb, "write_ms", writeTime);
+    }
+
+    static void line(StringBuilder sb, String name, Object value) {
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder sb, String name, Histogram h) {
+        line(sb, name + "_count", h.count());
+        line(sb, name + "_mean", Histogram.scaled(h.mean(), 1_000_000));
+        line(sb, name + "_p50", Histogram.scaled(h.percentile(50), 1_000_000));
+        line(sb, name + "_p90", Histogram.scaled(h.percentile(90), 1_000_000));
+        line(sb, name + "_p99", Histogram.scaled(h.percentile(99), 1_000_000));
+        line(sb, name + "_p999", Histogram.scaled(h.percentile(99.9), 1_000_000));
+        line(sb, name + "_max", Histogram.scaled(h.max(), 1_000_000));
+    }
+}
@@ -0,0 +1,193 @@
+package org.example;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+
+// Optional KeyServer settings given as --flags before the positional arguments
+// KeyServer 的可选参数（位于位置参数之前的 --选项）
+class ServerOptions {
+    // pre-generated key pair pool for the default profile (if RSA) 为默认算法（RSA 时）预生成密钥对的池
+    int poolHigh = 2;
+    int poolLow = 1;
+    int poolThreads = 1;
+    // per-profile pool sizing: {depth, low, threads} 每种算法单独的池大小
+    final EnumMap<KeyProfile, int[]> poolOverrides = new EnumMap<>(KeyProfile.class);
+    // key profiles clients may ask for, and the one used when they do not 可用算法及默认算法
+    EnumSet<KeyProfile> profiles = EnumSet.allOf(KeyProfile.class);
+    KeyProfile defaultProfile = KeyProfile.RSA_8192;
+    // directory of the persistent KeyResult store (null = memory only) 持久化存储目录
+    String storeDir = null;
+    // heap budget for completed results, 0 = unbounded 已完成结果的内存预算，0 表示不限制
+    long cacheBytes = 0;
+    // where evicted results go when there is no --store 没有 --store 时被淘汰结果的落盘目录
+    String spillDir = null;
+    // selector loops and how new connections are spread over them 选择器循环数量及分配方式
+    int reactors = 1;
+    boolean balanceByLoad = false;
+    // serve connections from virtual threads with blocking I/O instead of the selector loops
+    // 用阻塞 I/O 的虚拟线程代替选择器循环处理连接
+    boolean virtualThreads = false;
+    // bounded generation queue; when full either park new connections or answer BUSY
+    // 有界生成队列；队列满时暂停新连接，或回复 BUSY
+    int queueCapacity = 1024;
+    boolean rejectWhenBusy = false;
+    int retryAfterMs = 1000;
+    // queued generations whose clients all disconnected: low-priority lane or drop; keep late results?
+    // 所有客户端都已断开的排队任务：转入低优先级队列或丢弃；是否保留之后完成的结果
+    boolean orphansToBackground = true;
+    boolean keepOrphanResults = true;
+    // local port serving a plain-text metrics report, 0 = off (JMX is always on) 纯文本指标端口，0 表示关闭
+    int statsPort = 0;
+    // asynchronous log: minimum level and target file (null = stdout) 异步日志的最低级别与输出文件
+    int logLevel = Log.INFO;
+    String logFile = null;
+    // per-connection deadlines in ms, 0 = off 每个连接的超时（毫秒），0 表示关闭
+    long readIdleMs = 0;
+    long writeStallMs = 0;
+    long maxLifetimeMs = 0;
+    // names to generate ahead of their first request, in the background 需要提前在后台生成的名称文件
+    String warmFile = null;
+    double warmRate = 0;
+    int warmBatch = 16;
+    // consistent-hash cluster: shared node list, and this node's id in it (null = the entry with our port)
+    // 一致性哈希集群：共享的节点列表及本节点 id（null 表示端口与本服务器相同的条目）
+    String clusterFile = null;
+    String nodeId = null;
+
+    static void usage() {
+        System.err.println("Options:");
+        System.err.println("  --pool-depth <n>     target depth / high watermark of the key pair pool (0 = off, default 2)");
+        System.err.println("  --pool-low <n>       refill when the pool drops to this depth (default 1)");
+        System.err.println("  --pool-threads <n>   low-priority refill threads (default 1)");
+        System.err.println("                       (these apply to the default profile if it is RSA; other profiles are");
+        System.err.println("                       only pooled through --pool)");
+        System.err.println("  --pool <p>=<depth>[:<low>[:<threads>]]  pool sizing for one profile, may be repeated");
+        System.err.println("  --profiles <p,...>   enabled key profiles (default all: rsa8192,rsa3072,rsa2048,ec-p256,ec-p384,ed25519)");
+        System.err.println("  --default-profile <p> profile for legacy clients and v2 clients that choose none (default rsa8192)");
+        System.err.println("  --store <dir>        persist issued keys in <dir> and reload them on restart");
+        System.err.println("  --cache-bytes <n>    heap budget for cached results, e.g. 512m (default unbounded)");
+        System.err.println("  --spill <dir>        disk tier for evicted results without --store (default: temp dir)");
+        System.err.println("  --reactors <n>       selector loops serving connections (default 1)");
+        System.err.println("  --balance rr|load    spread connections round-robin or to the least loaded reactor (default rr)");
+        System.err.println("  --frontend nio|vthread  selector loops, or one virtual thread per connection with blocking I/O");
+        System.err.println("                       (--reactors and --balance apply to nio only) (default nio)");
+        System.err.println("  --queue-capacity <n> generations that may wait for a generator thread (default 1024)");
+        System.err.println("  --overload pause|busy when the queue is full: stop reading new connections until it drains to half,");
+        System.err.println("                       or answer new names with BUSY (v2) / close (legacy) (default pause)");
+        System.err.println("  --retry-after <ms>   retry hint sent in BUSY frames (default 1000)");
+        System.err.println("  --orphans background|drop  queued generations nobody waits for any more: run them on a");
+        System.err.println("                       low-priority thread, or drop them until the name is asked for again (default background)");
+        System.err.println("  --orphan-results keep|discard  store/cache results that finish with nobody waiting (default keep)");
+        System.err.println("  --log-level <l>      debug|info|warn|error|off; per-connection lines are debug (default info)");
+        System.err.println("  --log-file <file>    append the log to <file> instead of stdout");
+        System.err.println("  --read-idle <ms>     close a connection that sends nothing while we wait for it (default 0 = off)");
+        System.err.println("  --write-stall <ms>   close a connection that reads none of a pending reply (default 0 = off)");
+        System.err.println("  --max-lifetime <ms>  close any connection open longer than this (default 0 = off)");
+        System.err.println("  --warm <file>        generate the names in <file> (one per line, optional profile after it)");
+        System.err.println("                       in the background lane while no client generation is queued");
+        System.err.println("  --warm-rate <n/s>    at most n warm-up names per second (default 0 = no limit)");
+        System.err.println("  --warm-batch <n>     names signed together per warm-up batch (default 16)");
+        System.err.println("  --cluster <file>     split names between the nodes listed in <file> (\"<id> <host>:<port>\" per line);");
+        System.err.println("                       names owned by another node are forwarded to it");
+        System.err.println("  --node <id>          this server's entry in the cluster file (default: the one with this port)");
+        System.err.println("  --stats-port <n>     serve a plain-text metrics report on 127.0.0.1:<n> (default off; JMX is always on)");
+    }
+
+    // parses leading --options, returns index of the first positional argument (or -1 on error)
+    // 解析开头的 --选项，返回第一个位置参数的下标（出错返回 -1）
+    int parse(String[] args) {
+        int idx = 0;
+        try {
+            while (idx < args.length && args[idx].startsWith("--")) {
+                String opt = args[idx++];
+                if (idx >= args.length) return -1;
+                String val = args[idx++];
+                switch (opt) {
+                    case "--pool-depth" -> poolHigh = Integer.parseInt(val);
+                    case "--pool-low" -> poolLow = Integer.parseInt(val);
+                    case "--pool-threads" -> poolThreads = Integer.parseInt(val);
+                    case "--pool" -> {
+                        int eq = val.indexOf('=');
+                        if (eq < 0) return -1;
+                        String[] parts = val.substring(eq + 1).split(":");
+                        int depth = Integer.parseInt(parts[0]);
+                        int low = parts.length > 1 ? Integer.parseInt(parts[1]) : Math.min(depth, Math.max(1, depth / 2));
+                        int threads = parts.length > 2 ? Integer.parseInt(parts[2]) : 1;
+                        poolOverrides.put(KeyProfile.byId(val.substring(0, eq)), new int[] { depth, Math.min(low, depth), threads });
+                    }
+                    case "--profiles" -> {
+                        profiles = EnumSet.noneOf(KeyProfile.class);
+                        for (String p : val.split(","))
+                            profiles.add(KeyProfile.byId(p.trim()));
+                    }
+                    case "--default-profile" -> defaultProfile = KeyProfile.byId(val);
+                    case "--store" -> storeDir = val;
+                    case "--cache-bytes" -> cacheBytes = parseBytes(val);
+                    case "--spill" -> spillDir = val;
+                    case "--reactors" -> reactors = Integer.parseInt(val);
+                    case "--balance" -> {
+                        if (!val.equals("rr") && !val.equals("load")) return -1;
+                        balanceByLoad = val.equals("load");
+                    }
+                    case "--frontend" -> {
+                        if (!val.equals("nio") && !val.equals("vthread")) return -1;
+                        virtualThreads = val.equals("vthread");
+                    }
+                    case "--queue-capacity" -> queueCapacity = Integer.parseInt(val);
+                    case "--overload" -> {
+                        if (!val.equals("pause") && !val.equals("busy")) return -1;
+                        rejectWhenBusy = val.equals("busy");
+                    }
+                    case "--retry-after" -> retryAfterMs = Integer.parseInt(val);
+                    case "--orphans" -> {
+                        if (!val.equals("background") && !val.equals("drop")) return -1;
+                        orphansToBackground = val.equals("background");
+                    }
+                    case "--stats-port" -> statsPort = Integer.parseInt(val);
+                    case "--log-level" -> logLevel = Log.parseLevel(val);
+                    case "--log-file" -> logFile = val;
+                    case "--read-idle" -> readIdleMs = Long.parseLong(val);
+                    case "--write-stall" -> writeStallMs = Long.parseLong(val);
+                    case "--max-lifetime" -> maxLifetimeMs = Long.parseLong(val);
+                    case "--warm" -> warmFile = val;
+                    case "--warm-rate" -> warmRate = Double.parseDouble(val);
+                    case "--warm-batch" -> warmBatch = Integer.parseInt(val);
+                    case "--cluster" -> clusterFile = val;
+                    case "--node" -> nodeId = val;
+                    case "--orphan-results" -> {
+                        if (!val.equals("keep") && !val.equals("discard")) return -1;
+                        keepOrphanResults = val.equals("keep");
+                    }
+                    default -> { return -1; }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return -1;
+        }
+        if (poolLow > poolHigh) poolLow = poolHigh;
+        if (queueCapacity < 1) queueCapacity = 1;
+        return idx;
+    }
+
+    // {depth, low, threads} of the key pair pool for a profile; only the default profile is pooled
+    // unless --pool asks for another, so startup does not pre-generate keys nobody may request
+    // 某算法密钥对池的 {深度, 低水位, 线程数}；除非用 --pool 指定，只有默认算法有池，启动时不预先生成可能没人要的密钥
+    int[] poolFor(KeyProfile p) {
+        int[] o = poolOverrides.get(p);
+        if (o != null) return o;
+        return p == defaultProfile && p.slow() ? new int[] { poolHigh, poolLow, poolThreads } : new int[] { 0, 0, 1 };
+    }
+
+    // "1048576", "512k", "64m", "2g"
+    static long parseBytes(String s) {
+        String v = s.trim().toLowerCase();
+        long mul = 1;
+        char last = v.isEmpty() ? ' ' : v.charAt(v.length() - 1);
+        if (last == 'k') mul = 1L << 10;
+        else if (last == 'm') mul = 1L << 20;
+        else if (last == 'g') mul = 1L << 30;
+        if (mul != 1) v = v.substring(0, v.length() - 1);
+        return Long.parseLong(v) * mul;
+    }
+}
@@ -0,0 +1,131 @@
+package org.example;
+
+import java.io.*;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import javax.management.*;
+
+// Exposes KeyServer metrics over JMX and as plain text on a local port 通过 JMX 和本地端口的纯文本暴露指标
+// The text port answers every connection with one report and closes it, so
+// `nc 127.0.0.1 <port>` or a monitoring script can scrape it. 每个连接返回一份报告后关闭，便于脚本抓取
+class StatsEndpoint implements KeyServerMXBean {
+    private final KeyServer server;
+    private final ServerMetrics m;
+
+    StatsEndpoint(KeyServer server) {
+        this.server = server;
+        this.m = server.metrics();
+    }
+
+    void registerJmx(int port) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("org.example:type=KeyServer,port=" + port));
+        } catch (JMException e) {
+            System.err.println("JMX registration failed: " + e);
+        }
+    }
+
+    // serves reports on 127.0.0.1:port from a daemon thread 在守护线程中于 127.0.0.1:port 提供报告
+    void listen(int port) throws IOException {
+        ServerSocket ss = new ServerSocket();
+        ss.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Thread t = new Thread(() -> {
+            while (true) {
+                try (Socket s = ss.accept()) {
+                    OutputStream os = s.getOutputStream();
+                    os.write(getReport().getBytes(StandardCharsets.US_ASCII));
+                    os.flush();
+                } catch (IOException e) {
+                    System.err.println("Stats connection failed: " + e);
+                }
+            }
+        }, "stats-" + port);
+        t.setDaemon(true);
+        t.start();
+        System.out.println("Stats on 127.0.0.1:" + port);
+    }
+
+    @Override public long getAccepts() { return m.accepts.sum(); }
+    @Override public int getOpenConnections() { return server.openConnections(); }
+    @Override public long getCacheHits() { return server.cache().hits(); }
+    @Override public long getDiskHits() { return server.cache().diskHits(); }
+    @Override public long getMisses() { return server.cache().misses(); }
+    @Override public long getCoalescedWaiters() { return m.coalescedWaiters.sum(); }
+    @Override public long getResponses() { return m.responses.sum(); }
+    @Override public long getBytesWritten() { return m.bytesWritten.sum(); }
+
+    @Override public int getQueueDepth() { return server.generationQueueDepth(); }
+    @Override public long getRejectedRequests() { return server.rejectedRequests(); }
+    @Override public int getPausedConnections() { return server.pausedConnections(); }
+
+    @Override public double getGenerationMillisP50() { return ms(m.generation.percentile(50)); }
+    @Override public double getGenerationMillisP99() { return ms(m.generation.percentile(99)); }
+    @Override public double getGenerationMillisMax() { return ms(m.generation.max()); }
+    @Override public double getQueueWaitMillisP99() { return ms(m.queueWait.percentile(99)); }
+    @Override public double getTimeToFirstByteMillisP50() { return ms(m.timeToFirstByte.percentile(50)); }
+    @Override public double getTimeToFirstByteMillisP99() { return ms(m.timeToFirstByte.percentile(99)); }
+    @Override public double getTimeToFirstByteMillisP999() { return ms(m.timeToFirstByte.percentile(99.9)); }
+    @Override public double getWriteMillisP99() { return ms(m.writeTime.percentile(99)); }
+
+    private static long directBufferBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if (pool.getName().equals("direct")) return pool.getMemoryUsed();
+        return 0;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder(2048);
+        int open = server.openConnections();
+        ServerMetrics.line(sb, "frontend", server.frontendName());
+        ServerMetrics.line(sb, "open_connections", open);
+        // memory per connection, to compare the front ends under the same load 每连接内存，用于在相同负载下比较两种前端
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        ServerMetrics.line(sb, "heap_used_bytes", heap);
+        ServerMetrics.line(sb, "heap_per_connection_bytes", open == 0 ? 0 : heap / open);
+        ServerMetrics.line(sb, "direct_buffer_bytes", directBufferBytes());
+        HashRing ring = server.ring();
+        if (ring != null) {
+            ServerMetrics.line(sb, "cluster_node", ring.self().id);
+            ServerMetrics.line(sb, "cluster_nodes", ring.size());
+            ServerMetrics.line(sb, "forwards_in_flight", server.forwardsInFlight());
+        }
+        VirtualThreadFrontend f = server.frontend();
+        if (f != null)
+            f.appendTo(sb);
+        m.appendTo(sb);
+        ResultCache c = server.cache();
+        ServerMetrics.line(sb, "cache_hits", c.hits());
+        ServerMetrics.line(sb, "cache_disk_hits", c.diskHits());
+        ServerMetrics.line(sb, "cache_misses", c.misses());
+        ServerMetrics.line(sb, "cache_evictions", c.evictions());
+        ServerMetrics.line(sb, "cache_spill_failures", c.spillFailures());
+        ServerMetrics.line(sb, "cache_bytes", c.bytes());
+        ServerMetrics.line(sb, "cache_entries", c.entries());
+        ServerMetrics.line(sb, "queue_depth", server.generationQueueDepth());
+        ServerMetrics.line(sb, "queue_rejected", server.rejectedRequests());
+        ServerMetrics.line(sb, "paused_connections", server.pausedConnections());
+        ServerMetrics.line(sb, "log_dropped", Log.dropped());
+        Warmer w = server.warmer();
+        if (w != null)
+            w.appendTo(sb);
+        for (KeyProfile p : server.profiles()) {
+            KeyServer.ProfileStats ps = server.stats(p);
+            KeyPairPool pool = server.keyPairPool(p);
+            String prefix = "profile_" + p.id.replace('-', '_') + "_";
+            ServerMetrics.line(sb, prefix + "requests", ps.requests.sum());
+            ServerMetrics.line(sb, prefix + "generated", ps.generated.sum());
+            ServerMetrics.line(sb, prefix + "pool_depth", pool.depth());
+            ServerMetrics.line(sb, prefix + "pool_hits", pool.hits());
+            ServerMetrics.line(sb, prefix + "pool_misses", pool.misses());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package org.example;
+
+// Hashed timing wheel of connection deadlines, owned by one reactor thread 单个反应器线程拥有的连接截止时间哈希时间轮
+//
+// Entries are the ClientAttachments themselves (intrusive prev/next links), so scheduling
+// allocates nothing. I/O events never touch the wheel: they only update timestamps on the
+// attachment, and when a slot fires the reactor recomputes the real deadline and either
+// closes the connection or puts it back further ahead (lazy reinsertion).
+// 条目就是 ClientAttachment 本身（侵入式链表），调度不分配内存；I/O 事件只更新时间戳，
+// 槽位到期时反应器重新计算真实截止时间，要么关闭连接，要么重新插入（惰性重插）
+class TimingWheel {
+    // called for an entry whose slot came due: close the connection or schedule() it again
+    // 槽位到期时调用：关闭连接，或再次 schedule()
+    interface Expiry {
+        void due(KeyServer.ClientAttachment att, long now);
+    }
+
+    private final KeyServer.ClientAttachment[] slots;
+    private final int mask;
+    private final long tickNanos;
+    // absolute tick number that advance() handles next 下一个要处理的绝对刻度
+    private long currentTick;
+    private int size;
+
+    TimingWheel(int slotCount, long tickNanos, long now) {
+        if (Integer.bitCount(slotCount) != 1)
+            throw new IllegalArgumentException("slot count must be a power of two: " + slotCount);
+        this.slots = new KeyServer.ClientAttachment[slotCount];
+        this.mask = slotCount - 1;
+        this.tickNanos = tickNanos;
+        this.currentTick = Math.floorDiv(now, tickNanos);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // deadlines further out than one turn land in the last slot and get rescheduled when it fires
+    // 超过一圈的截止时间放在最远的槽位，到期时再重新调度
+    void schedule(KeyServer.ClientAttachment att, long deadline) {
+        if (att.wheelSlot >= 0)
+            unlink(att);
+        long tick = Math.max(Math.floorDiv(deadline, tickNanos), currentTick);
+        tick = Math.min(tick, currentTick + mask);
+        int slot = (int) (tick & mask);
+        att.wheelSlot = slot;
+        att.wheelPrev = null;
+        att.wheelNext = slots[slot];
+        if (att.wheelNext != null) att.wheelNext.wheelPrev = att;
+        slots[slot] = att;
+        size++;
+    }
+
+    void remove(KeyServer.ClientAttachment att) {
+        if (att.wheelSlot >= 0)
+            unlink(att);
+    }
+
+    private void unlink(KeyServer.ClientAttachment att) {
+        if (att.wheelPrev != null) att.wheelPrev.wheelNext = att.wheelNext;
+        else slots[att.wheelSlot] = att.wheelNext;
+        if (att.wheelNext != null) att.wheelNext.wheelPrev = att.wheelPrev;
+        att.wheelPrev = att.wheelNext = null;
+        att.wheelSlot = -1;
+        size--;
+    }
+
+    // select() timeout until the next tick, 0 (block) when nothing is scheduled
+    // 距下一个刻度的 select() 超时；没有条目时返回 0（一直阻塞）
+    long timeoutMillis(long now) {
+        if (size == 0)
+            return 0;
+        long next = currentTick * tickNanos - now;
+        return Math.max(1, (next + 999_999) / 1_000_000);
+    }
+
+    // fires every slot up to now 处理截至 now 的所有槽位
+    void advance(long now, Expiry expiry) {
+        long target = Math.floorDiv(now, tickNanos);
+        if (size == 0) {
+            currentTick = target;
+            return;
+        }
+        // after a long stall there is no point in walking more than one turn 长时间停顿后最多走一圈
+        if (target - currentTick > mask)
+            currentTick = target - mask;
+        while (currentTick <= target) {
+            int slot = (int) (currentTick & mask);
+            KeyServer.ClientAttachment att = slots[slot];
+            slots[slot] = null;
+            // detach the slot and move on first, so entries rescheduled by expiry land in later ticks
+            // 先摘下槽位并前进一格，使 expiry 重新调度的条目落在之后的刻度
+            currentTick++;
+            while (att != null) {
+                KeyServer.ClientAttachment next = att.wheelNext;
+                att.wheelPrev = att.wheelNext = null;
+                att.wheelSlot = -1;
+                size--;
+                expiry.due(att, now);
+                att = next;
+            }
+        }
+    }
+}
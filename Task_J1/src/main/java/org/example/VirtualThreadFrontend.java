@@ -0,0 +1,475 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Serves connections from virtual threads with blocking I/O (--frontend vthread) 用阻塞 I/O 的虚拟线程处理连接
+//
+// The alternative to the reactors: each connection gets a reader thread that parses the legacy name or
+// the v2 frames, and a writer thread once it has asked for something, which blocks on its reply queue
+// and writes each reply out. Name lookup, generation, coalescing and the reply bytes are the same
+// KeyServer code the reactors use (request(), responseFor()). Deadlines are checked by one sweeper.
+// 反应器的替代方案：每个连接一个读线程解析旧协议名称或 v2 帧，发出请求后再加一个写线程，阻塞在回复队列上逐个写出。
+// 名称查找、生成、合并与回复字节和反应器共用 KeyServer 的代码；截止时间由一个巡检线程检查
+class VirtualThreadFrontend {
+    // how often the sweeper checks the deadlines, and the sleep while new connections are paused
+    // 巡检间隔，以及暂停新连接时的轮询间隔
+    static final long SWEEP_MILLIS = 250;
+    static final long PAUSE_MILLIS = 10;
+    static final int INITIAL_BUFFER = 512;
+
+    private final KeyServer server;
+    private final ServerMetrics metrics;
+    private final long readIdleNanos, writeStallNanos, lifetimeNanos;
+    private final ThreadFactory threads = Thread.ofVirtual().name("conn-", 0).factory();
+    private final Set<Connection> open = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger paused = new AtomicInteger();
+    // read buffers of the open connections; the reactors share one per thread instead 各连接读缓冲区的总大小
+    private final AtomicLong bufferBytes = new AtomicLong();
+    private final LongAdder threadsStarted = new LongAdder();
+
+    VirtualThreadFrontend(KeyServer server, long readIdleNanos, long writeStallNanos, long lifetimeNanos) {
+        this.server = server;
+        this.metrics = server.metrics();
+        this.readIdleNanos = readIdleNanos;
+        this.writeStallNanos = writeStallNanos;
+        this.lifetimeNanos = lifetimeNanos;
+    }
+
+    int connections() {
+        return open.size();
+    }
+
+    int paused() {
+        return paused.get();
+    }
+
+    // "name value" lines for the stats port 统计端口的 "名称 值" 行
+    void appendTo(StringBuilder sb) {
+        ServerMetrics.line(sb, "vthread_buffer_bytes", bufferBytes.get());
+        ServerMetrics.line(sb, "vthread_threads_started", threadsStarted.sum());
+    }
+
+    // blocking accept; every connection starts with its reader thread 阻塞接受连接，每个连接先启动读线程
+    void acceptLoop(ServerSocketChannel ssc) throws IOException {
+        if (readIdleNanos > 0 || writeStallNanos > 0 || lifetimeNanos > 0) {
+            Thread sweeper = new Thread(this::sweep, "vthread-sweeper");
+            sweeper.setDaemon(true);
+            sweeper.start();
+        }
+        while (true) {
+            SocketChannel sc = ssc.accept();
+            metrics.accepts.increment();
+            Connection c = new Connection(sc);
+            open.add(c);
+            start(c::readLoop);
+        }
+    }
+
+    private Thread start(Runnable r) {
+        threadsStarted.increment();
+        Thread t = threads.newThread(r);
+        t.start();
+        return t;
+    }
+
+    // closes connections past a deadline; closing the channel also ends a blocked read or write
+    // 关闭超过截止时间的连接；关闭通道同时结束阻塞中的读写
+    //   read idle   - nothing received while we wait for the client (half a name, idle v2 connection)
+    //   write stall - a reply is being written but the client has not read any of it
+    //   lifetime    - connection open too long, whatever it is doing
+    private void sweep() {
+        while (true) {
+            try {
+                Thread.sleep(SWEEP_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (Connection c : open) {
+                if (lifetimeNanos > 0 && now - c.openedNanos >= lifetimeNanos)
+                    c.expire(metrics.expiredLifetime, "lifetime");
+                else if (readIdleNanos > 0 && c.waitingForClient() && now - c.lastReadNanos >= readIdleNanos)
+                    c.expire(metrics.expiredReadIdle, "read idle");
+                else if (writeStallNanos > 0 && c.writing && now - c.lastWriteNanos >= writeStallNanos)
+                    c.expire(metrics.expiredWriteStall, "write stall");
+            }
+        }
+    }
+
+    // a waiter whose result goes to the connection's writer thread 结果交给连接写线程的等待者
+    private static final class Waiter extends KeyServer.PendingDelivery {
+        private final Connection connection;
+
+        Waiter(Connection connection, int requestId) {
+            super(null, requestId);
+            this.connection = connection;
+        }
+
+        @Override
+        Reactor handOff() {
+            connection.replies.add(this);
+            return null;
+        }
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        final long openedNanos = System.nanoTime();
+        // written by the reader and writer threads, read by the sweeper 由读写线程更新，巡检线程读取
+        volatile long lastReadNanos = openedNanos, lastWriteNanos;
+        volatile boolean v2, nameReceived, inputClosed, writing, pausing;
+        // another cluster node (FORWARDED): served here and never read-idle 另一个集群节点：在本节点处理，不受读空闲限制
+        volatile boolean peer;
+        // v2: requests not answered yet 尚未回复的请求数
+        final AtomicInteger outstanding = new AtomicInteger();
+        final BlockingQueue<KeyServer.PendingDelivery> replies = new LinkedBlockingQueue<>();
+        // waiters still registered in waitingClients, withdrawn on close 仍在 waitingClients 中的等待项，关闭时撤回
+        final Set<Waiter> waits = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean closed = new AtomicBoolean();
+        // reader thread only 仅读线程访问
+        ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER).limit(0);
+        String profileId;
+        volatile Thread writer;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            bufferBytes.addAndGet(in.capacity());
+        }
+
+        // the same condition as KeyServer.checkDeadlines 与 KeyServer.checkDeadlines 的条件相同
+        boolean waitingForClient() {
+            if (pausing || inputClosed || peer)
+                return false;
+            return v2 ? outstanding.get() == 0 && !writing : !nameReceived;
+        }
+
+        void readLoop() {
+            try {
+                // replies are written back to back, see Reactor.registerNewChannels 回复连续写出，见 Reactor
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                // pause policy: do not read new connections until the generation queue drains
+                // 暂停策略：生成队列消化前不读取新连接
+                if (server.pauseNewConnections()) {
+                    pausing = true;
+                    paused.incrementAndGet();
+                    try {
+                        while (server.pauseNewConnections() && !closed.get())
+                            Thread.sleep(PAUSE_MILLIS);
+                    } finally {
+                        paused.decrementAndGet();
+                        lastReadNanos = System.nanoTime();
+                        pausing = false;
+                    }
+                }
+                if (!fill(1)) {
+                    close();
+                    return;
+                }
+                if (in.get(in.position()) == ProtocolV2.MAGIC) {
+                    v2 = true;
+                    readFrames();
+                } else {
+                    readLegacy();
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            } catch (RuntimeException e) {
+                Log.error("Connection failed: {}", e.toString(), e);
+            } finally {
+                // only a v2 client that half-closed stays open until its replies are written;
+                // anything else (including an unexpected exception) must not leak the socket
+                // 只有半关闭的 v2 客户端要等回复写完；其他情况（包括意外异常）都不能泄漏连接
+                if (!inputClosed)
+                    close();
+            }
+        }
+
+        // legacy: name\0, then anything else is ignored until the client closes 名称之后的数据忽略，直到客户端关闭
+        private void readLegacy() throws IOException {
+            int zero;
+            while ((zero = NameInterner.indexOfZero(in, in.position(), in.limit())) < 0) {
+                if (in.remaining() > ProtocolV2.MAX_NAME) {
+                    Log.warn("Name too long, closing");
+                    close();
+                    return;
+                }
+                if (!fill(in.remaining() + 1)) {
+                    close();
+                    return;
+                }
+            }
+            int len = zero - in.position();
+            if (len > ProtocolV2.MAX_NAME) {
+                Log.warn("Name too long, closing");
+                close();
+                return;
+            }
+            String name = decode(in, in.position(), len);
+            nameReceived = true;
+            if (Log.debug()) Log.debug("Received name '{}' from {}", name, channel.getRemoteAddress());
+            request(name, server.defaultProfile(), -1);
+            // a legacy client that closes before its reply gets nothing 旧客户端在回复前关闭则不再回复
+            while (!closed.get() && channel.read(in.clear()) >= 0)
+                lastReadNanos = System.nanoTime();
+            close();
+        }
+
+        // v2: hello, then frames until the client half-closes v2：先握手，然后逐帧读取直到客户端半关闭
+        private void readFrames() throws IOException {
+            try {
+                if (!fill(2)) {
+                    close();
+                    return;
+                }
+                in.get();
+                byte version = in.get();
+                if (version != ProtocolV2.VERSION) {
+                    Log.warn("Unsupported protocol version {}, closing", version);
+                    close();
+                    return;
+                }
+                while (fill(ProtocolV2.FRAME_HEADER)) {
+                    int start = in.position();
+                    byte type = in.get(start);
+                    int len = in.getInt(start + 1);
+                    if (len < 0 || len > ProtocolV2.MAX_FRAME) {
+                        Log.warn("Bad frame length {}, closing", len);
+                        close();
+                        return;
+                    }
+                    if (!fill(ProtocolV2.FRAME_HEADER + len))
+                        break;
+                    // fill may have compacted the buffer and moved the frame to the front 填充时可能压缩了缓冲区，帧的位置会变
+                    start = in.position();
+                    int end = start + ProtocolV2.FRAME_HEADER + len;
+                    int limit = in.limit();
+                    in.position(start + ProtocolV2.FRAME_HEADER).limit(end);
+                    boolean ok = handleFrame(type, in);
+                    in.limit(limit).position(end);
+                    if (!ok) {
+                        close();
+                        return;
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                Log.warn("Malformed frame, closing");
+                close();
+                return;
+            }
+            // v2 client may half-close after its last request; answer what is still pending
+            // v2 客户端可能在最后一个请求后半关闭；把剩余的请求回复完
+            inputClosed = true;
+            closeIfIdle();
+        }
+
+        // false if the frame is malformed 帧格式错误时返回 false
+        private boolean handleFrame(byte type, ByteBuffer payload) {
+            switch (type) {
+                case ProtocolV2.REQUEST -> {
+                    int reqId = payload.getInt();
+                    String name = readName(payload, payload.remaining());
+                    if (name == null)
+                        return false;
+                    requestFromFrame(reqId, name);
+                }
+                case ProtocolV2.BATCH -> {
+                    int count = payload.getInt();
+                    for (int i = 0; i < count; i++) {
+                        int reqId = payload.getInt();
+                        String name = readName(payload, payload.getShort() & 0xFFFF);
+                        if (name == null)
+                            return false;
+                        requestFromFrame(reqId, name);
+                    }
+                }
+                case ProtocolV2.SET_PROFILE -> {
+                    byte[] pb = new byte[payload.remaining()];
+                    payload.get(pb);
+                    profileId = new String(pb, StandardCharsets.US_ASCII);
+                }
+                case ProtocolV2.FORWARDED -> {
+                    peer = true;
+                    if (Log.info()) Log.info("Node {} connected from {}",
+                            StandardCharsets.US_ASCII.decode(payload), channel.socket().getRemoteSocketAddress());
+                }
+                default -> {
+                    Log.warn("Unknown frame type {}, closing", type);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void requestFromFrame(int reqId, String name) {
+            outstanding.incrementAndGet();
+            KeyProfile profile = server.defaultProfile();
+            if (profileId != null) {
+                profile = server.enabledProfile(profileId);
+                if (profile == null) {
+                    Waiter w = new Waiter(this, reqId);
+                    w.error = "unknown or disabled key profile '" + profileId + "'";
+                    reply(w);
+                    return;
+                }
+            }
+            request(name, profile, reqId);
+        }
+
+        private void request(String name, KeyProfile profile, int reqId) {
+            Waiter w = new Waiter(this, reqId);
+            w.forwarded = peer;
+            waits.add(w);
+            if (!server.request(name, profile, w)) {
+                waits.remove(w);
+                w.busy = true;
+                reply(w);
+                return;
+            }
+            if (writer == null)
+                writer = start(this::writeLoop);
+            // closed meanwhile: close() may have missed this waiter 期间已关闭：close() 可能漏掉了这个等待项
+            if (closed.get() && waits.remove(w))
+                server.withdrawWaiter(w);
+        }
+
+        private void reply(Waiter w) {
+            replies.add(w);
+            if (writer == null)
+                writer = start(this::writeLoop);
+        }
+
+        // takes finished waiters off the queue and writes their replies, blocking 从队列取出完成的等待项并阻塞写出回复
+        void writeLoop() {
+            try {
+                while (!closed.get()) {
+                    KeyServer.PendingDelivery pd = replies.take();
+                    // writing before outstanding drops, so closeIfIdle never sees neither 先置 writing 再减少 outstanding
+                    writing = true;
+                    waits.remove(pd);
+                    if (v2) outstanding.decrementAndGet();
+                    KeyServer.Response resp = server.responseFor(pd, v2);
+                    if (resp == null) {
+                        close();
+                        return;
+                    }
+                    lastWriteNanos = System.nanoTime();
+                    boolean done;
+                    do {
+                        long before = resp.written;
+                        done = resp.writeTo(channel);
+                        if (resp.written > before) {
+                            lastWriteNanos = System.nanoTime();
+                            metrics.bytesWritten.add(resp.written - before);
+                            if (before == 0)
+                                metrics.timeToFirstByte.record(System.nanoTime() - resp.requestNanos);
+                        }
+                    } while (!done);
+                    metrics.writeTime.record(System.nanoTime() - resp.queuedNanos);
+                    metrics.responses.increment();
+                    if (!v2) {
+                        if (Log.debug()) Log.debug("Finished sending to {}; closing", channel.getRemoteAddress());
+                        close();
+                        return;
+                    }
+                    writing = false;
+                    closeIfIdle();
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        // v2: close once the client stopped sending and every request is answered
+        // v2：客户端停止发送且所有请求都已回复后关闭
+        private void closeIfIdle() {
+            if (inputClosed && outstanding.get() == 0 && !writing && replies.isEmpty())
+                close();
+        }
+
+        // at least n unread bytes in `in`, reading more as needed; false at end of stream
+        // 保证 in 中至少有 n 个未读字节，不够时继续读取；流结束时返回 false
+        private boolean fill(int n) throws IOException {
+            while (in.remaining() < n) {
+                in.compact();
+                if (in.capacity() < n) {
+                    ByteBuffer bigger = ByteBuffer.allocate(Math.max(n, in.capacity() * 2));
+                    bufferBytes.addAndGet(bigger.capacity() - in.capacity());
+                    bigger.put(in.flip());
+                    in = bigger;
+                }
+                int r = channel.read(in);
+                in.flip();
+                if (r < 0)
+                    return false;
+                lastReadNanos = System.nanoTime();
+            }
+            return true;
+        }
+
+        void expire(LongAdder counter, String why) {
+            if (closed.get())
+                return;
+            counter.increment();
+            if (Log.debug()) {
+                try {
+                    Log.debug("Closing {} connection: {}", why, channel.getRemoteAddress());
+                } catch (IOException e) {}
+            }
+            close();
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true))
+                return;
+            open.remove(this);
+            bufferBytes.addAndGet(-in.capacity());
+            // stop waiting for names nobody will read any more 不再为无人读取的名称等待
+            for (Waiter w : waits)
+                if (waits.remove(w))
+                    server.withdrawWaiter(w);
+            if (Log.debug()) {
+                try {
+                    Log.debug("Closing connection: {}", channel.getRemoteAddress());
+                } catch (IOException e) {}
+            }
+            try { channel.close(); } catch (IOException e) {}
+            Thread w = writer;
+            if (w != null && w != Thread.currentThread())
+                w.interrupt();
+        }
+    }
+
+    // name of len bytes, or null if it is too long or contains \0 名称过长或包含 \0 时返回 null
+    private static String readName(ByteBuffer payload, int len) {
+        int pos = payload.position();
+        if (len > ProtocolV2.MAX_NAME)
+            return null;
+        if (len > payload.remaining())
+            throw new BufferUnderflowException();
+        payload.position(pos + len);
+        if (NameInterner.indexOfZero(payload, pos, pos + len) >= 0)
+            return null;
+        return decode(payload, pos, len);
+    }
+
+    private static String decode(ByteBuffer src, int pos, int len) {
+        byte[] b = new byte[len];
+        src.get(pos, b);
+        return new String(b, StandardCharsets.US_ASCII);
+    }
+}
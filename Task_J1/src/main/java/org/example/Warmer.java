@@ -0,0 +1,151 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Generates a file of names ahead of their first request (--warm) 提前为名称文件中的名称生成密钥和证书（--warm）
+//
+// One name per line, optionally followed by a key profile ("alice ec-p256"); blank lines and lines
+// starting with # are skipped. Names go to the background lane in batches, at most --warm-rate per
+// second, and only while no client generation is queued, with at most one batch waiting there, so
+// live requests keep the generator threads. Progress goes to the log and the stats port.
+// 每行一个名称，可跟一个算法；空行和 # 开头的行忽略。名称分批送入后台队列，每秒最多 --warm-rate 个，
+// 且只在没有客户端生成任务排队时发送、后台最多等待一个批次，实时请求始终优先
+class Warmer implements Runnable {
+    private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final KeyServer server;
+    private final Path file;
+    private final KeyProfile defaultProfile;
+    private final double rate;
+    private final int batchSize;
+
+    private final LongAdder read = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    // queued for warm-up but requested by a client first, so generated by the normal queue 被客户端抢先请求、由普通队列生成
+    private final LongAdder promoted = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean finished;
+    private long lastReport = startNanos;
+
+    Warmer(KeyServer server, Path file, KeyProfile defaultProfile, double rate, int batchSize) {
+        this.server = server;
+        this.file = file;
+        this.defaultProfile = defaultProfile;
+        this.rate = rate;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    void start() {
+        Thread t = new Thread(this, "warmer");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // called from WarmBatch on the background thread 由后台线程上的 WarmBatch 调用
+    void generated(int n) { generated.add(n); }
+    void failed(int n) { failed.add(n); }
+    void promoted(int n) { promoted.add(n); }
+
+    @Override
+    public void run() {
+        Log.info("Warm-up from {} started ({})", file, rate > 0 ? rate + " names/s" : "no rate limit");
+        EnumMap<KeyProfile, List<String>> batches = new EnumMap<>(KeyProfile.class);
+        long next = System.nanoTime();
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                read.increment();
+                String[] parts = line.split("\\s+");
+                KeyProfile profile = parts.length > 1 ? server.enabledProfile(parts[1]) : defaultProfile;
+                if (profile == null || parts[0].length() > ProtocolV2.MAX_NAME) {
+                    Log.warn("Warm-up skips '{}': unknown or disabled profile, or name too long", line);
+                    skipped.increment();
+                    continue;
+                }
+                List<String> batch = batches.computeIfAbsent(profile, p -> new ArrayList<>(batchSize));
+                batch.add(parts[0]);
+                if (batch.size() >= batchSize) {
+                    next = submit(batch, profile, next);
+                    batch.clear();
+                }
+            }
+            for (var e : batches.entrySet())
+                if (!e.getValue().isEmpty())
+                    next = submit(e.getValue(), e.getKey(), next);
+            // wait for the last batches 等待最后的批次完成
+            while (generated.sum() + failed.sum() + promoted.sum() < queued.sum()) {
+                Thread.sleep(100);
+                report();
+            }
+        } catch (IOException e) {
+            Log.error("Warm-up from {} stopped: {}", file, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finished = true;
+        Log.info("Warm-up from {} finished: {}", file, this);
+    }
+
+    // hands one batch to the server once live work and the rate allow it; returns the next start time
+    // 在实时任务和速率允许时把一个批次交给服务器，返回下一批的开始时间
+    private long submit(List<String> names, KeyProfile profile, long next) throws InterruptedException {
+        while (server.liveBacklog() || server.backgroundDepth() > 0) {
+            Thread.sleep(20);
+            report();
+        }
+        long wait = next - System.nanoTime();
+        if (wait > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+        int n;
+        // -1: background lane full of orphaned generations, try again later 后台队列被孤儿任务占满，稍后重试
+        while ((n = server.warm(names, profile, this)) < 0)
+            Thread.sleep(100);
+        queued.add(n);
+        skipped.add(names.size() - n);
+        report();
+        return rate > 0 ? Math.max(next, System.nanoTime()) + (long) (n * 1e9 / rate) : next;
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        if (now - lastReport < REPORT_NANOS)
+            return;
+        lastReport = now;
+        Log.info("Warm-up: {}", this);
+    }
+
+    // "name value" lines for the stats port 统计端口的 "名称 值" 行
+    void appendTo(StringBuilder sb) {
+        ServerMetrics.line(sb, "warm_read", read.sum());
+        ServerMetrics.line(sb, "warm_queued", queued.sum());
+        ServerMetrics.line(sb, "warm_skipped", skipped.sum());
+        ServerMetrics.line(sb, "warm_generated", generated.sum());
+        ServerMetrics.line(sb, "warm_promoted", promoted.sum());
+        ServerMetrics.line(sb, "warm_failed", failed.sum());
+        ServerMetrics.line(sb, "warm_finished", finished ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return "read=" + read.sum() + " skipped=" + skipped.sum() + " queued=" + queued.sum()
+                + " generated=" + generated.sum() + " promoted=" + promoted.sum() + " failed=" + failed.sum()
+                + String.format(Locale.ROOT, " (%.1f/s over %.1fs)", generated.sum() / seconds, seconds);
+    }
+}
@@ -0,0 +1,162 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.*;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// Protocol v2 bytes split across reads must be answered the same way by both front ends
+// 跨多次读取拆开的 v2 字节流，两种前端都必须给出相同的回复
+class FramingTest {
+    static final int TIMEOUT_MS = 30_000;
+    // long enough for the server to see the first part as a read of its own 足够让服务器把前一部分作为单独一次读取
+    static final long PAUSE_MS = 300;
+
+    // a server started for one test 为单个测试启动的服务器
+    private static final class Running {
+        final KeyServer server;
+        final int port;
+
+        Running(KeyServer server, int port) {
+            this.server = server;
+            this.port = port;
+        }
+    }
+
+    // hello split after the magic byte 握手在魔数之后被拆开
+    @ParameterizedTest
+    @ValueSource(strings = { "nio", "vthread" })
+    void splitHello(String frontend) throws Exception {
+        Running server = start(frontend);
+        try (Socket s = connect(server)) {
+            byte[] hello = bytes(ProtocolV2.hello());
+            byte[] rest = concat(Arrays.copyOfRange(hello, 1, hello.length), bytes(ProtocolV2.request(7, "split-hello")));
+            send(s, Arrays.copyOf(hello, 1));
+            send(s, rest);
+            assertResult(s, 7);
+        }
+        awaitNoConnections(server);
+    }
+
+    // one whole frame, then a second frame in two parts 一个完整帧，然后第二帧分两次到达
+    @ParameterizedTest
+    @ValueSource(strings = { "nio", "vthread" })
+    void splitFrame(String frontend) throws Exception {
+        Running server = start(frontend);
+        try (Socket s = connect(server)) {
+            byte[] second = bytes(ProtocolV2.request(2, "split-frame-second"));
+            int half = second.length / 2;
+            send(s, concat(bytes(ProtocolV2.hello()), bytes(ProtocolV2.request(1, "split-frame-first")),
+                    Arrays.copyOf(second, half)));
+            send(s, Arrays.copyOfRange(second, half, second.length));
+            // replies may come in either order 回复顺序不定
+            int a = readResult(s), b = readResult(s);
+            assertEquals(3, a + b);
+            assertNotEquals(a, b);
+        }
+        awaitNoConnections(server);
+    }
+
+    private static Running start(String frontend) throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        KeyPairGenerator g = KeyPairGenerator.getInstance("EC");
+        g.initialize(new ECGenParameterSpec("secp256r1"));
+        ServerOptions o = new ServerOptions();
+        o.defaultProfile = KeyProfile.EC_P256;
+        o.logLevel = Log.WARN;
+        o.virtualThreads = frontend.equals("vthread");
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        KeyServer server = new KeyServer(port, g.generateKeyPair().getPrivate(), new X500Name("CN=Test Issuer"), 1, o);
+        Thread t = new Thread(() -> {
+            try {
+                server.startMainLoop();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "test-server-" + port);
+        t.setDaemon(true);
+        t.start();
+        return new Running(server, port);
+    }
+
+    private static Socket connect(Running server) throws Exception {
+        long deadline = System.nanoTime() + TIMEOUT_MS * 1_000_000L;
+        while (true) {
+            Socket s = new Socket();
+            try {
+                s.connect(new InetSocketAddress("127.0.0.1", server.port), TIMEOUT_MS);
+                s.setSoTimeout(TIMEOUT_MS);
+                s.setTcpNoDelay(true);
+                return s;
+            } catch (IOException e) {
+                s.close();
+                if (System.nanoTime() > deadline) throw e;
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static void send(Socket s, byte[] b) throws Exception {
+        OutputStream out = s.getOutputStream();
+        out.write(b);
+        out.flush();
+        Thread.sleep(PAUSE_MS);
+    }
+
+    private static void assertResult(Socket s, int reqId) throws IOException {
+        assertEquals(reqId, readResult(s));
+    }
+
+    // reads one RESULT frame and returns its request id 读取一个 RESULT 帧，返回其请求 id
+    private static int readResult(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(s.getInputStream());
+        byte type = in.readByte();
+        int len = in.readInt();
+        int reqId = in.readInt();
+        in.readFully(new byte[len - 4]);
+        assertEquals(ProtocolV2.RESULT, type, "frame type");
+        return reqId;
+    }
+
+    // the server closes its side once the client has gone 客户端离开后服务器也关闭连接
+    private static void awaitNoConnections(Running running) throws InterruptedException {
+        KeyServer server = running.server;
+        long deadline = System.nanoTime() + TIMEOUT_MS * 1_000_000L;
+        while (server.openConnections() > 0 && System.nanoTime() < deadline)
+            Thread.sleep(20);
+        assertEquals(0, server.openConnections(), "open connections");
+    }
+
+    private static byte[] bytes(ByteBuffer b) {
+        byte[] out = new byte[b.remaining()];
+        b.get(out);
+        return out;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int n = 0;
+        for (byte[] p : parts) n += p.length;
+        byte[] out = new byte[n];
+        int at = 0;
+        for (byte[] p : parts) {
+            System.arraycopy(p, 0, out, at, p.length);
+            at += p.length;
+        }
+        return out;
+    }
+}
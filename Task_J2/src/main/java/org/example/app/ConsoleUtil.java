@@ -1,6 +1,6 @@
 package org.example.app;
 
-import org.example.list.ConcurrentLinkedList;
+import org.example.list.SortableList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -20,20 +20,19 @@ public class ConsoleUtil {
         return chunks;
     }
 
-    public static void printLinked(ConcurrentLinkedList list, StepCounter steps) {
+    public static void printLinked(SortableList<?> list, StepCounter steps) {
         int index = 0;
         for (String v : list) {
             System.out.printf("%3d: %s\n", index++, v);
         }
-        System.out.printf("[size=%d, steps=%d]\n", list.size(), steps.get());
+        System.out.printf("[size=%d, steps=%d, steps/s=%.0f]\n", list.size(), steps.get(), steps.perSecond());
     }
 
+    // list 是调用方取得的副本，打印时不需要加锁
     public static void printArray(List<String> list, StepCounter steps) {
-        synchronized (list) {
-            for (int i = 0; i < list.size(); i++) {
-                System.out.printf("%3d: %s\n", i, list.get(i));
-            }
+        for (int i = 0; i < list.size(); i++) {
+            System.out.printf("%3d: %s\n", i, list.get(i));
         }
-        System.out.printf("[size=%d, steps=%d]\n", list.size(), steps.get());
+        System.out.printf("[size=%d, steps=%d, steps/s=%.0f]\n", list.size(), steps.get(), steps.perSecond());
     }
 }
\ No newline at end of file
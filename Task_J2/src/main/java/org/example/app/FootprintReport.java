@@ -0,0 +1,88 @@
+package org.example.app;
+
+import org.example.list.CompactLinkedList;
+import org.example.list.ConcurrentLinkedList;
+import org.example.list.LockFreeLinkedList;
+import org.example.list.SegmentedArrayList;
+import org.example.list.SortableList;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
+// 比较各模式每个元素占用的堆内存
+// 先生成所有 80 字符的字符串并一直持有，再分别装入每种结构，用 GC 后的已用堆差值除以元素个数；
+// 因此结果只包含结构本身（节点、锁、引用），字符串的大小单独列出
+// 用法：java org.example.app.FootprintReport [元素个数，默认 1000000]，元素很多时需要加 -Xmx
+public class FootprintReport {
+    // 测量期间保持结构可达
+    private static Object keep;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long base = usedHeap();
+        String[] chunks = chunks(n);
+        long strings = usedHeap() - base;
+        System.out.printf(Locale.ROOT, "%d elements, strings %.1f bytes/element (not included below)\n",
+                n, (double) strings / n);
+
+        report("linked", n, chunks, ConcurrentLinkedList::new);
+        report("compact", n, chunks, CompactLinkedList::new);
+        report("lockfree", n, chunks, LockFreeLinkedList::new);
+        reportArray(n, chunks);
+    }
+
+    private static void report(String mode, int n, String[] chunks, Supplier<SortableList<?>> factory) {
+        long before = usedHeap();
+        SortableList<?> list = factory.get();
+        for (String c : chunks)
+            list.addFirst(c);
+        keep = list;
+        print(mode, n, usedHeap() - before, list.size());
+        keep = null;
+    }
+
+    // 与 report 一样在单独的方法中测量，测量前后不会有别的结构仍被栈帧引用
+    private static void reportArray(int n, String[] chunks) {
+        long before = usedHeap();
+        SegmentedArrayList array = new SegmentedArrayList();
+        for (String c : chunks)
+            array.addFirst(c);
+        keep = array;
+        print("array", n, usedHeap() - before, array.size());
+        keep = null;
+    }
+
+    private static void print(String mode, int n, long bytes, int size) {
+        System.out.printf(Locale.ROOT, "%-9s %6.1f bytes/element  (%d MiB for %d)\n",
+                mode, (double) bytes / n, bytes >> 20, size);
+    }
+
+    private static String[] chunks(int n) {
+        Random r = new Random(1);
+        String[] out = new String[n];
+        char[] buf = new char[80];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < buf.length; j++)
+                buf[j] = (char) ('a' + r.nextInt(26));
+            out[i] = new String(buf);
+        }
+        return out;
+    }
+
+    // 多次 GC 后的已用堆，取其中最小值
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+}
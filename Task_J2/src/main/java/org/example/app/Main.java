@@ -1,24 +1,33 @@
 package org.example.app;
 
+import org.example.list.CompactLinkedList;
 import org.example.list.ConcurrentLinkedList;
+import org.example.list.LockFreeLinkedList;
+import org.example.list.Quiescence;
+import org.example.list.SegmentedArrayList;
+import org.example.list.SortableList;
 import org.example.sort.BubbleSorterArray;
 import org.example.sort.BubbleSorterLinked;
+import org.example.sort.OddEvenSortEngine;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.IntSupplier;
 
 
 public class Main {
-    enum Mode {LINKED, ARRAY}
+    // LINKED：逐节点加锁的链表；COMPACT：同样加锁但节点不带 ReentrantLock；LOCKFREE：基于 CAS 的无锁链表；ARRAY：分段加锁的数组；
+    // ODDEVEN：数组上的奇偶换位排序，各线程按阶段分区间并行
+    enum Mode {LINKED, COMPACT, LOCKFREE, ARRAY, ODDEVEN}
 
     public static void main(String[] args) throws Exception {
         int workers = 2;
         long delayMs = 1000;
         Mode mode = Mode.LINKED;
+        long reportMs = 0;
 
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
@@ -30,7 +39,16 @@ public class Main {
                     break;
                 case "--mode":
                     String m = args[++i].toLowerCase(Locale.ROOT);
-                    mode = m.equals("array") ? Mode.ARRAY : Mode.LINKED;
+                    mode = switch (m) {
+                        case "array" -> Mode.ARRAY;
+                        case "lockfree" -> Mode.LOCKFREE;
+                        case "compact" -> Mode.COMPACT;
+                        case "oddeven" -> Mode.ODDEVEN;
+                        default -> Mode.LINKED;
+                    };
+                    break;
+                case "--reportMs":
+                    reportMs = Long.parseLong(args[++i]);
                     break;
             }
         }
@@ -39,18 +57,45 @@ public class Main {
 
         StepCounter steps = new StepCounter();
         StopFlag stop = new StopFlag();
+        if (reportMs > 0)
+            startReporter(reportMs, steps, stop);
 
         switch (mode) {
-            case LINKED -> runLinked(workers, delayMs, steps, stop);
+            case LINKED -> runLinked(new ConcurrentLinkedList(), workers, delayMs, steps, stop);
+            case COMPACT -> runLinked(new CompactLinkedList(), workers, delayMs, steps, stop);
+            case LOCKFREE -> runLinked(new LockFreeLinkedList(), workers, delayMs, steps, stop);
             case ARRAY -> runArray(workers, delayMs, steps, stop);
+            case ODDEVEN -> runOddEven(workers, delayMs, steps, stop);
         }
     }
 
-    private static void runLinked(int workers, long delayMs, StepCounter steps, StopFlag stop) throws Exception {
-        ConcurrentLinkedList list = new ConcurrentLinkedList();
+    // 每隔 reportMs 打印一次步数和每秒步数，便于比较不同模式和线程数
+    private static void startReporter(long reportMs, StepCounter steps, StopFlag stop) {
+        Thread t = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    Thread.sleep(reportMs);
+                    System.out.printf("[steps=%d, steps/s=%.0f]\n", steps.get(), steps.perSecond());
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }, "Reporter");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // 所有排序线程都停下（列表已有序）时打印一次
+    private static void notifySorted(Quiescence quiescence, IntSupplier size) {
+        quiescence.onSorted(() -> System.out.printf("[sorted: size=%d, clean passes=%d]\n",
+                size.getAsInt(), quiescence.cleanPasses()));
+    }
+
+    private static <N> void runLinked(SortableList<N> list, int workers, long delayMs, StepCounter steps, StopFlag stop) throws Exception {
+        notifySorted(list.quiescence(), list::size);
         List<Thread> sorters = new ArrayList<>();
         for (int i = 0; i < workers; i++) {
-            Thread t = new Thread(new BubbleSorterLinked(list, delayMs, steps), "SorterLinked-" + i);
+            Thread t = new Thread(new BubbleSorterLinked<>(list, delayMs, steps), "SorterLinked-" + i);
             t.setDaemon(true);
             t.start();
             sorters.add(t);
@@ -59,7 +104,8 @@ public class Main {
     }
 
     private static void runArray(int workers, long delayMs, StepCounter steps, StopFlag stop) throws Exception {
-        List<String> list = Collections.synchronizedList(new ArrayList<>());
+        SegmentedArrayList list = new SegmentedArrayList();
+        notifySorted(list.quiescence(), list::size);
         List<Thread> sorters = new ArrayList<>();
         for (int i = 0; i < workers; i++) {
             Thread t = new Thread(new BubbleSorterArray(list, delayMs, steps), "SorterArray-" + i);
@@ -70,7 +116,14 @@ public class Main {
         inputLoopArray(list, steps, stop);
     }
 
-    private static void inputLoopLinked(ConcurrentLinkedList list, StepCounter steps, StopFlag stop) throws Exception {
+    private static void runOddEven(int workers, long delayMs, StepCounter steps, StopFlag stop) throws Exception {
+        OddEvenSortEngine engine = new OddEvenSortEngine(workers, delayMs, steps);
+        notifySorted(engine.quiescence(), engine::size);
+        engine.start();
+        inputLoopOddEven(engine, steps, stop);
+    }
+
+    private static void inputLoopLinked(SortableList<?> list, StepCounter steps, StopFlag stop) throws Exception {
         System.out.println("Type lines. Empty line = print current list & step count. Ctrl+C to exit.");
         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
         String line;
@@ -86,18 +139,34 @@ public class Main {
         stop.set(true);
     }
 
-    private static void inputLoopArray(List<String> list, StepCounter steps, StopFlag stop) throws Exception {
+    private static void inputLoopArray(SegmentedArrayList list, StepCounter steps, StopFlag stop) throws Exception {
+        System.out.println("Type lines. Empty line = print current list & step count. Ctrl+C to exit.");
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.isEmpty()) {
+                ConsoleUtil.printArray(list.snapshot(), steps);
+            } else {
+                for (String chunk : ConsoleUtil.split80(line)) {
+                    list.addFirst(chunk);
+                }
+            }
+        }
+        stop.set(true);
+    }
+
+    private static void inputLoopOddEven(OddEvenSortEngine engine, StepCounter steps, StopFlag stop) throws Exception {
         System.out.println("Type lines. Empty line = print current list & step count. Ctrl+C to exit.");
         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
         String line;
         while ((line = br.readLine()) != null) {
             if (line.isEmpty()) {
-                ConsoleUtil.printArray(list, steps);
+                // 副本在当前阶段结束时取得
+                ConsoleUtil.printArray(engine.snapshot(), steps);
+                System.out.printf("[phases=%d]\n", engine.phases());
             } else {
                 for (String chunk : ConsoleUtil.split80(line)) {
-                    synchronized (list) {
-                        list.add(0, chunk);
-                    }
+                    engine.addFirst(chunk);
                 }
             }
         }
@@ -3,14 +3,60 @@ package org.example.app;
 import java.util.concurrent.atomic.AtomicLong;
 
 // 用于计数排序步骤的线程安全计数器
-public class StepCounter {
+public final class StepCounter {
+    // 速率窗口：后台线程每 SAMPLE_MS 采样一次，保留最近 WINDOW_SAMPLES 个间隔（约 1 秒）
+    private static final long SAMPLE_MS = 200;
+    private static final int WINDOW_SAMPLES = 5;
+
     private final AtomicLong steps = new AtomicLong();
+    // 采样环：步数和时间，newest 是最新一格，count 是已采样的格数（均在 this 上同步）
+    private final long[] sampleSteps = new long[WINDOW_SAMPLES + 1];
+    private final long[] sampleNanos = new long[WINDOW_SAMPLES + 1];
+    private int newest;
+    private int count = 1;
+
+    public StepCounter() {
+        sampleNanos[0] = System.nanoTime();
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(SAMPLE_MS);
+                    sample();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }, "StepSampler");
+        t.setDaemon(true);
+        t.start();
+    }
 
     public long inc() {
         return steps.incrementAndGet();
     }
 
+    // 一次加上多步，减少多个线程对同一计数器的竞争
+    public long add(long n) {
+        return steps.addAndGet(n);
+    }
+
     public long get() {
         return steps.get();
     }
-}
\ No newline at end of file
+
+    // 最近约 1 秒内每秒的步数，用于比较不同模式和线程数下的吞吐量
+    // 窗口固定，不依赖调用方或调用间隔：报告线程和状态行可以同时使用，排序线程停下的时间只影响这一秒
+    public synchronized double perSecond() {
+        int oldest = count < sampleSteps.length ? 0 : (newest + 1) % sampleSteps.length;
+        long now = System.nanoTime();
+        return now == sampleNanos[oldest] ? 0 : (steps.get() - sampleSteps[oldest]) * 1e9 / (now - sampleNanos[oldest]);
+    }
+
+    private synchronized void sample() {
+        newest = (newest + 1) % sampleSteps.length;
+        sampleSteps[newest] = steps.get();
+        sampleNanos[newest] = System.nanoTime();
+        if (count < sampleSteps.length)
+            count++;
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.list;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 与 ConcurrentLinkedList 相同的逐节点加锁链表，但使用 CompactNode，节省每个节点的锁对象
+// 交换仍严格按 prev→a→b 顺序加锁避免死锁；头部插入锁住哨兵 head，不需要单独的 headLock
+public class CompactLinkedList implements SortableList<CompactNode> {
+    private final CompactNode head = new CompactNode(null);
+    private final AtomicInteger size = new AtomicInteger();
+    private final Quiescence quiescence = new Quiescence();
+
+    @Override
+    public void addFirst(String s) {
+        CompactNode n = new CompactNode(s);
+        head.lock();
+        try {
+            n.next = head.next;
+            head.next = n;
+            size.incrementAndGet();
+        } finally {
+            head.unlock();
+        }
+        quiescence.bump();
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean trySwapIfOutOfOrder(CompactNode prev, CompactNode a, CompactNode b) {
+        if (a == null || b == null)
+            return false;
+        lockOrdered(prev, a, b);
+        try {
+            if (prev.next != a || a.next != b)
+                return false;
+            if (a.value.compareTo(b.value) > 0) {
+                a.next = b.next;
+                b.next = a;
+                prev.next = b;
+                return true;
+            }
+            return false;
+        } finally {
+            b.unlock();
+            a.unlock();
+            prev.unlock();
+        }
+    }
+
+    public static void lockOrdered(CompactNode prev, CompactNode a, CompactNode b) {
+        prev.lock();
+        a.lock();
+        if (b != null)
+            b.lock();
+    }
+
+    @Override
+    public Quiescence quiescence() {
+        return quiescence;
+    }
+
+    @Override
+    public CompactNode head() {
+        return head;
+    }
+
+    @Override
+    public CompactNode next(CompactNode node) {
+        return node.next;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            CompactNode cur = head.next;
+
+            @Override
+            public boolean hasNext() {
+                return cur != null;
+            }
+
+            @Override
+            public String next() {
+                if (cur == null)
+                    throw new NoSuchElementException();
+                String v = cur.value;
+                cur = cur.next;
+                return v;
+            }
+        };
+    }
+}
@@ -3,30 +3,35 @@ package org.example.list;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 // 一个线程安全的链表，支持在头部添加元素，并提供了冒泡排序时交换节点的方法
-public class ConcurrentLinkedList implements Iterable<String> {
+// 交换时按 prev→a→b 的顺序先锁住三个节点，再检查它们是否仍然相连
+// 头部插入同样锁住哨兵 head，与以 head 为 prev 的交换互斥，插入的节点不会被交换覆盖
+public class ConcurrentLinkedList implements SortableList<Node> {
     private final Node head = new Node(null);
-    private final ReentrantLock headLock = new ReentrantLock();
     private final AtomicInteger size = new AtomicInteger();
+    private final Quiescence quiescence = new Quiescence();
 
+    @Override
     public void addFirst(String s) {
         Node n = new Node(s);
-        headLock.lock();
+        head.lock.lock();
         try {
             n.next = head.next;
             head.next = n;
             size.incrementAndGet();
         } finally {
-            headLock.unlock();
+            head.lock.unlock();
         }
+        quiescence.bump();
     }
 
+    @Override
     public int size() {
         return size.get();
     }
 
+    @Override
     public boolean trySwapIfOutOfOrder(Node prev, Node a, Node b) {
         lockOrdered(prev, a, b);
         try {
@@ -55,10 +60,21 @@ public class ConcurrentLinkedList implements Iterable<String> {
             b.lock.lock();
     }
 
+    @Override
+    public Quiescence quiescence() {
+        return quiescence;
+    }
+
+    @Override
     public Node head() {
         return head;
     }
 
+    @Override
+    public Node next(Node node) {
+        return node.next;
+    }
+
     @Override
     public Iterator<String> iterator() {
         return new Iterator<>() {
@@ -0,0 +1,112 @@
+package org.example.list;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+// 无锁链表：next 指针用 AtomicMarkableReference 表示，插入和交换都只用 CAS，任何线程都不会阻塞等待
+//
+// 头部插入：CAS head.next 从 first 改为新节点，失败则重试
+// 相邻交换（prev→a→b→c 变为 prev→b'→a'→c）：
+//   1. 标记 a.next、b.next，把 a、b 冻结，其他线程对它们的 CAS 都会失败
+//   2. 复制出 b'、a'（copy-on-swap），CAS prev.next 从 a 改为 b'
+//   3. 成功后 a、b 保持标记、被淘汰；任何一步失败都撤销已做的标记并返回 false
+// 仍持有旧节点的排序线程沿着旧节点的 next 走到 c，重新回到链表上
+public class LockFreeLinkedList implements SortableList<LockFreeLinkedList.Node> {
+    public static final class Node {
+        public final String value;
+        final AtomicMarkableReference<Node> next;
+
+        Node(String value, Node next) {
+            this.value = value;
+            this.next = new AtomicMarkableReference<>(next, false);
+        }
+    }
+
+    private final Node head = new Node(null, null);
+    private final AtomicInteger size = new AtomicInteger();
+    private final Quiescence quiescence = new Quiescence();
+
+    @Override
+    public void addFirst(String s) {
+        Node n = new Node(s, null);
+        while (true) {
+            // head 从不参与交换，不会被标记
+            Node first = head.next.getReference();
+            n.next.set(first, false);
+            if (head.next.compareAndSet(first, n, false, false)) {
+                size.incrementAndGet();
+                quiescence.bump();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Quiescence quiescence() {
+        return quiescence;
+    }
+
+    @Override
+    public Node head() {
+        return head;
+    }
+
+    @Override
+    public Node next(Node node) {
+        return node.next.getReference();
+    }
+
+    @Override
+    public boolean trySwapIfOutOfOrder(Node prev, Node a, Node b) {
+        if (a == null || b == null)
+            return false;
+        if (a.value.compareTo(b.value) <= 0)
+            return false;
+        // 冻结 a→b，同时确认两者仍然相连
+        if (!a.next.compareAndSet(b, b, false, true))
+            return false;
+        Node c = b.next.getReference();
+        if (!b.next.compareAndSet(c, c, false, true)) {
+            a.next.set(b, false);
+            return false;
+        }
+        Node a2 = new Node(a.value, c);
+        Node b2 = new Node(b.value, a2);
+        if (!prev.next.compareAndSet(a, b2, false, false)) {
+            // prev 已不指向 a（头部插入或 prev 自己被交换），撤销标记
+            b.next.set(c, false);
+            a.next.set(b, false);
+            return false;
+        }
+        return true;
+    }
+
+    // 弱一致的遍历：并发交换时可能看到交换前或交换后的顺序，但不会重复或遗漏元素
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            Node cur = head.next.getReference();
+
+            @Override
+            public boolean hasNext() {
+                return cur != null;
+            }
+
+            @Override
+            public String next() {
+                if (cur == null)
+                    throw new NoSuchElementException();
+                String v = cur.value;
+                cur = cur.next.getReference();
+                return v;
+            }
+        };
+    }
+}
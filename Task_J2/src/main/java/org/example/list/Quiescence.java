@@ -0,0 +1,97 @@
+package org.example.list;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 排序线程的静止检测：列表排好序后所有排序线程停下等待，直到下一次插入
+//
+// 每个列表持有一个 Quiescence，插入时调用 bump() 使 epoch 加一（"变脏"）
+// 排序线程在一轮开始时记下 epoch；一轮没有交换、并且这期间 epoch 没变，就调用 awaitChange 停下
+// 别的线程同时在交换也没关系：交换过的线程这一轮不干净，会继续下一轮，直到它自己的一轮也干净为止
+// 所有排序线程都停下时，最后一次交换之后必然有一整轮在不变的列表上没有发现逆序，即列表已有序，此时通知一次
+public class Quiescence {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final AtomicLong cleanPasses = new AtomicLong();
+    // 只在锁内修改；epoch 可以不加锁读取
+    private volatile long epoch;
+    private int workers;
+    private int parked;
+    // 上次通知以来是否有过插入，避免空表或重复通知
+    private boolean dirty;
+    private volatile Runnable onSorted = () -> {};
+
+    public long epoch() {
+        return epoch;
+    }
+
+    // 有元素插入：唤醒所有停下的排序线程
+    public void bump() {
+        lock.lock();
+        try {
+            epoch++;
+            dirty = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 只唤醒排序线程，不算作插入（不会引起新的"已排好序"通知）
+    public void wake() {
+        lock.lock();
+        try {
+            epoch++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 每个排序线程在开始前登记一次
+    public void register() {
+        lock.lock();
+        try {
+            workers++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void cleanPass() {
+        cleanPasses.incrementAndGet();
+    }
+
+    // 没有交换的轮数（各线程合计）
+    public long cleanPasses() {
+        return cleanPasses.get();
+    }
+
+    // 所有排序线程都停下时调用，在锁内执行，应尽快返回
+    public void onSorted(Runnable r) {
+        onSorted = r;
+    }
+
+    // 若 epoch 仍是 start，停下直到 bump() 或 wake()；否则立即返回
+    public void awaitChange(long start) throws InterruptedException {
+        lock.lock();
+        try {
+            if (epoch != start)
+                return;
+            parked++;
+            try {
+                if (parked == workers && dirty) {
+                    dirty = false;
+                    onSorted.run();
+                }
+                while (epoch == start)
+                    changed.await();
+            } finally {
+                parked--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
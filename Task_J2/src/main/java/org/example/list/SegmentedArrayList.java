@@ -0,0 +1,124 @@
+package org.example.list;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 分段数组：元素存放在固定大小的段中，每段一把锁，代替 Collections.synchronizedList
+//
+// 元素 i 位于全局位置 offset + i，即第 (offset + i) / SEGMENT 段的第 (offset + i) % SEGMENT 格
+// 头部插入只是把元素写到 offset - 1 并让 offset 减一，O(1)，不移动任何元素；前面没有空位时，
+// 复制出一个在前面多出若干空段的新目录（copy-on-grow，段对象本身共用）
+// 已有元素的物理位置永远不变，所以相邻交换只需锁住两个位置所在的段（至多两段，按位置从小到大加锁），
+// 不同段上的交换可以真正并行
+public class SegmentedArrayList {
+    public static final int SEGMENT = 64;
+
+    private static final class Segment {
+        final String[] items = new String[SEGMENT];
+        final ReentrantLock lock = new ReentrantLock();
+    }
+
+    // 目录、第一个元素的全局位置、元素个数；整体替换，读者总能看到一致的三者
+    private static final class State {
+        final Segment[] dir;
+        final int offset;
+        final int size;
+
+        State(Segment[] dir, int offset, int size) {
+            this.dir = dir;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private volatile State state = new State(new Segment[] { new Segment() }, SEGMENT, 0);
+    // 串行化头部插入（写者之间互斥，不影响交换和读取）
+    private final ReentrantLock headLock = new ReentrantLock();
+    private final Quiescence quiescence = new Quiescence();
+
+    public void addFirst(String s) {
+        headLock.lock();
+        try {
+            State st = state;
+            Segment[] dir = st.dir;
+            int offset = st.offset;
+            if (offset == 0) {
+                // 前面加倍的空段，均摊 O(1)
+                int more = dir.length;
+                Segment[] grown = new Segment[dir.length + more];
+                for (int k = 0; k < more; k++)
+                    grown[k] = new Segment();
+                System.arraycopy(dir, 0, grown, more, dir.length);
+                dir = grown;
+                offset = more * SEGMENT;
+            }
+            int pos = offset - 1;
+            // 该格不在任何已发布的下标范围内，交换线程不会访问；随 state 的 volatile 写一起发布
+            dir[pos / SEGMENT].items[pos % SEGMENT] = s;
+            state = new State(dir, pos, st.size + 1);
+        } finally {
+            headLock.unlock();
+        }
+        quiescence.bump();
+    }
+
+    public int size() {
+        return state.size;
+    }
+
+    public Quiescence quiescence() {
+        return quiescence;
+    }
+
+    // 若 i 与 i+1 逆序则交换，返回是否交换；越界返回 false
+    public boolean trySwapIfOutOfOrder(int i) {
+        State st = state;
+        if (i < 0 || i + 1 >= st.size)
+            return false;
+        int p = st.offset + i;
+        Segment sa = st.dir[p / SEGMENT];
+        Segment sb = st.dir[(p + 1) / SEGMENT];
+        sa.lock.lock();
+        if (sb != sa)
+            sb.lock.lock();
+        try {
+            String[] ia = sa.items, ib = sb.items;
+            int ja = p % SEGMENT, jb = (p + 1) % SEGMENT;
+            String a = ia[ja], b = ib[jb];
+            if (a.compareTo(b) > 0) {
+                ia[ja] = b;
+                ib[jb] = a;
+                return true;
+            }
+            return false;
+        } finally {
+            if (sb != sa)
+                sb.lock.unlock();
+            sa.lock.unlock();
+        }
+    }
+
+    // 一致的副本：逐段加锁复制，先锁下一段再释放上一段，跨段的交换不会被看到一半
+    public List<String> snapshot() {
+        State st = state;
+        List<String> out = new ArrayList<>(st.size);
+        if (st.size == 0)
+            return out;
+        int first = st.offset / SEGMENT, last = (st.offset + st.size - 1) / SEGMENT;
+        Segment prev = null;
+        for (int k = first; k <= last; k++) {
+            Segment seg = st.dir[k];
+            seg.lock.lock();
+            if (prev != null)
+                prev.lock.unlock();
+            int from = k == first ? st.offset % SEGMENT : 0;
+            int to = k == last ? (st.offset + st.size - 1) % SEGMENT + 1 : SEGMENT;
+            for (int j = from; j < to; j++)
+                out.add(seg.items[j]);
+            prev = seg;
+        }
+        prev.lock.unlock();
+        return out;
+    }
+}
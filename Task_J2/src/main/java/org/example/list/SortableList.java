@@ -0,0 +1,22 @@
+package org.example.list;
+
+// 供冒泡排序线程使用的链表接口：N 是具体实现的节点类型
+// 排序线程从哨兵 head() 出发，用 next() 向后走，并用 trySwapIfOutOfOrder 交换相邻的 a、b
+public interface SortableList<N> extends Iterable<String> {
+    // 在头部插入一个元素
+    void addFirst(String s);
+
+    int size();
+
+    // 哨兵头节点，本身不存值
+    N head();
+
+    // node 的后继，到达末尾时返回 null
+    N next(N node);
+
+    // 若 prev→a→b 仍然相连且 a > b，则交换为 prev→b→a 并返回 true；否则返回 false
+    boolean trySwapIfOutOfOrder(N prev, N a, N b);
+
+    // 插入时变脏的 epoch，排序线程据此在列表有序后停下
+    Quiescence quiescence();
+}
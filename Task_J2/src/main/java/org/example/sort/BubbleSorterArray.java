@@ -1,52 +1,51 @@
 package org.example.sort;
 
 import org.example.app.StepCounter;
-
-import java.util.Collections;
-import java.util.List;
+import org.example.list.Quiescence;
+import org.example.list.SegmentedArrayList;
 
 /*
 优点：每个节点独立加锁，并发度高
 缺点：实现复杂，容易死锁
 锁顺序：严格按 prev→a→b 顺序加锁避免死锁
+数组版本使用 SegmentedArrayList：每次比较只锁住 i、i+1 所在的一到两个段
+一轮没有交换且期间没有插入时停下，等待下一次插入（见 Quiescence）
  */
 public class BubbleSorterArray implements Runnable {
-    private final List<String> list;
+    private final SegmentedArrayList list;
     private final long delayMs;
     private final StepCounter steps;
+    private final Quiescence quiescence;
 
-    public BubbleSorterArray(List<String> list, long delayMs, StepCounter steps) {
+    public BubbleSorterArray(SegmentedArrayList list, long delayMs, StepCounter steps) {
         this.list = list;
         this.delayMs = delayMs;
         this.steps = steps;
+        this.quiescence = list.quiescence();
+        quiescence.register();
     }
 
     @Override
     public void run() {
         try {
             while (true) {
-                int n;
-                synchronized (list) {
-                    n = list.size();
-                }
+                // 先记下 epoch 再读长度，之后的插入一定会改变 epoch
+                long epoch = quiescence.epoch();
+                boolean dirty = false;
+                int n = list.size();
                 for (int i = 0; i + 1 < n; i++) {
                     sleep(delayMs);
 
                     steps.inc();
-                    boolean swapped = false;
-
-                    synchronized (list) {
-                        if (i + 1 < list.size()) {
-                            String a = list.get(i);
-                            String b = list.get(i + 1);
-                            if (a.compareTo(b) > 0) {
-                                Collections.swap(list, i, i + 1);
-                                swapped = true;
-                            }
-                        }
-                    }
+                    boolean swapped = list.trySwapIfOutOfOrder(i);
+                    if (swapped)
+                        dirty = true;
                     sleep(delayMs);
                 }
+                if (!dirty) {
+                    quiescence.cleanPass();
+                    quiescence.awaitChange(epoch);
+                }
             }
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
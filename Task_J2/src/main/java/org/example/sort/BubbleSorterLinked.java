@@ -1,44 +1,57 @@
 package org.example.sort;
 
 import org.example.app.StepCounter;
-import org.example.list.ConcurrentLinkedList;
-import org.example.list.Node;
+import org.example.list.Quiescence;
+import org.example.list.SortableList;
 
 /*
 优点：实现简单，使用synchronized关键字
 缺点：并发度低，整个列表被锁定
  */
-public class BubbleSorterLinked implements Runnable {
-    private final ConcurrentLinkedList list;
+// N 为链表实现的节点类型，加锁链表与无锁链表共用同一个排序线程
+// 一轮没有交换且期间没有插入时停下，等待下一次插入（见 Quiescence）
+public class BubbleSorterLinked<N> implements Runnable {
+    private final SortableList<N> list;
     private final long delayMs;
     private final StepCounter steps;
+    private final Quiescence quiescence;
 
-    public BubbleSorterLinked(ConcurrentLinkedList list, long delayMs, StepCounter steps) {
+    public BubbleSorterLinked(SortableList<N> list, long delayMs, StepCounter steps) {
         this.list = list;
         this.delayMs = delayMs;
         this.steps = steps;
+        this.quiescence = list.quiescence();
+        quiescence.register();
     }
 
     @Override
     public void run() {
         try {
             while (true) {
-                Node prev = list.head();
-                Node a = prev.next;
-                while (a != null && a.next != null) {
-                    Node b = a.next;
+                // 先记下 epoch 再读链表，之后的插入一定会改变 epoch
+                long epoch = quiescence.epoch();
+                boolean dirty = false;
+                N prev = list.head();
+                N a = list.next(prev);
+                N b;
+                while (a != null && (b = list.next(a)) != null) {
                     sleep(delayMs);
                     steps.inc();
                     boolean swapped = list.trySwapIfOutOfOrder(prev, a, b);
                     sleep(delayMs);
                     if (swapped) {
-                        prev = prev.next;
-                        a = prev.next;
+                        dirty = true;
+                        prev = list.next(prev);
+                        a = list.next(prev);
                     } else {
                         prev = a;
-                        a = a.next;
+                        a = list.next(a);
                     }
                 }
+                if (!dirty) {
+                    quiescence.cleanPass();
+                    quiescence.awaitChange(epoch);
+                }
             }
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
@@ -0,0 +1,181 @@
+package org.example.sort;
+
+import org.example.app.StepCounter;
+import org.example.list.Quiescence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Phaser;
+
+/*
+奇偶换位排序（odd-even transposition sort）引擎，用于数组模式
+偶数阶段比较 (0,1)(2,3)…，奇数阶段比较 (1,2)(3,4)…；同一阶段内的比较对互不重叠，
+所以把它们按下标区间平均分给各个工作线程，阶段内完全不加锁，只在阶段之间用 Phaser 同步
+n 个元素最多 n 个阶段就能排好序
+插入和打印不能在阶段进行中修改或读取数组，所以先排队，由 Phaser.onAdvance（阶段之间、所有线程都已到达）统一处理
+连续两个阶段（奇、偶各一）都没有交换且没有插入时数组已有序，各线程停下直到下一次插入（见 Quiescence）
+ */
+public class OddEvenSortEngine {
+    private final int workers;
+    private final long delayMs;
+    private final StepCounter steps;
+    // 数组及其长度：阶段内只由负责该区间的线程读写，阶段之间只由 onAdvance 修改（Phaser 保证可见性）
+    private String[] items = new String[16];
+    private int size;
+    private final ConcurrentLinkedQueue<String> inserts = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<CompletableFuture<List<String>>> snapshots = new ConcurrentLinkedQueue<>();
+    private volatile long phases;
+    private volatile int published;
+    private final Phaser phaser;
+    private final Quiescence quiescence = new Quiescence();
+    // 本阶段各线程是否交换过；阶段内只由对应线程写，阶段之间由 onAdvance 读取并清零
+    private final boolean[] swapped;
+    // 以下只在 onAdvance 中修改：连续无交换的阶段数，以及是否停下、停在哪个 epoch
+    private int cleanPhases;
+    private boolean idle;
+    private long idleEpoch;
+
+    public OddEvenSortEngine(int workers, long delayMs, StepCounter steps) {
+        this.workers = Math.max(1, workers);
+        this.delayMs = delayMs;
+        this.steps = steps;
+        this.swapped = new boolean[this.workers];
+        for (int i = 0; i < this.workers; i++)
+            quiescence.register();
+        this.phaser = new Phaser(this.workers) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                betweenPhases();
+                return false;
+            }
+        };
+    }
+
+    public void start() {
+        for (int i = 0; i < workers; i++) {
+            int id = i;
+            Thread t = new Thread(() -> work(id), "SorterOddEven-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    // 在头部插入，下一次阶段切换时生效
+    public void addFirst(String s) {
+        inserts.add(s);
+        quiescence.bump();
+    }
+
+    // 下一次阶段切换时的数组副本（等待当前阶段结束）
+    public List<String> snapshot() throws InterruptedException {
+        CompletableFuture<List<String>> f = new CompletableFuture<>();
+        snapshots.add(f);
+        // 线程停下时没有阶段切换，先唤醒它们跑一个阶段
+        quiescence.wake();
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // 已完成的阶段数
+    public long phases() {
+        return phases;
+    }
+
+    // 最近一次阶段切换时的元素个数
+    public int size() {
+        return published;
+    }
+
+    public Quiescence quiescence() {
+        return quiescence;
+    }
+
+    private void work(int id) {
+        try {
+            while (!phaser.isTerminated()) {
+                if (idle)
+                    quiescence.awaitChange(idleEpoch);
+                int phase = phaser.getPhase();
+                compareRange(id, phase & 1);
+                phaser.arriveAndAwaitAdvance();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            phaser.arriveAndDeregister();
+        }
+    }
+
+    // 本线程负责的比较对：第 k 对是 (parity + 2k, parity + 2k + 1)，按线程数平均划分
+    private void compareRange(int id, int parity) throws InterruptedException {
+        int pairs = Math.max(0, (size - parity) / 2);
+        int from = (int) ((long) pairs * id / workers);
+        int to = (int) ((long) pairs * (id + 1) / workers);
+        String[] a = items;
+        for (int k = from; k < to; k++) {
+            sleep(delayMs);
+            int i = parity + 2 * k;
+            if (a[i].compareTo(a[i + 1]) > 0) {
+                String t = a[i];
+                a[i] = a[i + 1];
+                a[i + 1] = t;
+                swapped[id] = true;
+            }
+        }
+        if (to > from)
+            steps.add(to - from);
+    }
+
+    // 由最后一个到达的线程执行，此时其他线程都在等待
+    private void betweenPhases() {
+        phases++;
+        // 先读 epoch 再看队列：之后才入队的插入和打印一定会改变 epoch，线程不会错过
+        long epoch = quiescence.epoch();
+        boolean dirty = !inserts.isEmpty();
+        for (int i = 0; i < workers; i++) {
+            dirty |= swapped[i];
+            swapped[i] = false;
+        }
+        if (dirty) {
+            cleanPhases = 0;
+        } else {
+            cleanPhases++;
+            quiescence.cleanPass();
+        }
+        idle = cleanPhases >= 2;
+        idleEpoch = epoch;
+        if (!inserts.isEmpty()) {
+            List<String> added = new ArrayList<>();
+            String s;
+            while ((s = inserts.poll()) != null)
+                added.add(s);
+            int k = added.size();
+            String[] next = items.length >= size + k ? items : new String[Math.max(size + k, items.length * 2)];
+            System.arraycopy(items, 0, next, k, size);
+            // 后插入的在最前面，与逐个 add(0, …) 的结果一致
+            for (int j = 0; j < k; j++)
+                next[j] = added.get(k - 1 - j);
+            items = next;
+            size += k;
+            published = size;
+        }
+        CompletableFuture<List<String>> f;
+        List<String> copy = null;
+        while ((f = snapshots.poll()) != null) {
+            if (copy == null)
+                copy = Arrays.asList(Arrays.copyOf(items, size));
+            f.complete(copy);
+        }
+    }
+
+    private static void sleep(long ms) throws InterruptedException {
+        if (ms > 0)
+            Thread.sleep(ms);
+    }
+}